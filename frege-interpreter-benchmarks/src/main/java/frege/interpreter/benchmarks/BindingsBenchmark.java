@@ -0,0 +1,52 @@
+package frege.interpreter.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluations with a number of bindings whose values change between evaluations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BindingsBenchmark {
+
+    @Param({"0", "10", "100"})
+    public int bindings;
+
+    private ScriptEngine engine;
+    private int counter;
+
+    @Setup
+    public void setUp() throws ScriptException {
+        engine = Engines.newEngine();
+        for (int i = 0; i < bindings; i++) {
+            engine.put("b" + i + " :: Int", i);
+        }
+        engine.eval("1 + 2");
+    }
+
+    @Benchmark
+    public Object evalWithNewValue() throws ScriptException {
+        if (bindings > 0) {
+            engine.put("b0 :: Int", counter++);
+        }
+        return engine.eval("1 + 2");
+    }
+}
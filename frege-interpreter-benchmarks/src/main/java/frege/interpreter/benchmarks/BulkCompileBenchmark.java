@@ -0,0 +1,61 @@
+package frege.interpreter.benchmarks;
+
+import frege.scriptengine.FregeScriptEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Independent scripts compiled together, with one run of the Java compiler or in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BulkCompileBenchmark {
+
+    @Param({"8", "32"})
+    public int scripts;
+
+    private FregeScriptEngine.JFregeScriptEngine engine;
+    private int counter;
+
+    @Setup
+    public void setUp() throws ScriptException {
+        engine = (FregeScriptEngine.JFregeScriptEngine) Engines.newEngine();
+        engine.eval("1 + 2");
+    }
+
+    @Benchmark
+    public List<CompiledScript> batch() throws ScriptException {
+        return engine.compileBatch(freshScripts());
+    }
+
+    @Benchmark
+    public List<CompiledScript> parallel() throws ScriptException {
+        return engine.compileParallel(freshScripts());
+    }
+
+    private String[] freshScripts() {
+        final String[] sources = new String[scripts];
+        for (int i = 0; i < scripts; i++) {
+            sources[i] = "map (+ " + counter++ + ") [1..10]";
+        }
+        return sources;
+    }
+}
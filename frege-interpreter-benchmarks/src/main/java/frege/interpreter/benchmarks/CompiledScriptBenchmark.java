@@ -0,0 +1,54 @@
+package frege.interpreter.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A script compiled once and evaluated many times, and a defined function called through
+ * {@link Invocable} without compiling anything.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CompiledScriptBenchmark {
+
+    private CompiledScript compiled;
+    private Invocable invocable;
+
+    @Setup
+    public void setUp() throws ScriptException, NoSuchMethodException {
+        final ScriptEngine engine = Engines.newEngine();
+        compiled = ((Compilable) engine).compile("sum [1..10]");
+        engine.eval("square :: Int -> Int\nsquare x = x * x");
+        invocable = (Invocable) engine;
+        invocable.invokeFunction("square", 1);
+    }
+
+    @Benchmark
+    public Object eval() throws ScriptException {
+        return compiled.eval();
+    }
+
+    @Benchmark
+    public Object invokeFunction() throws ScriptException, NoSuchMethodException {
+        return invocable.invokeFunction("square", 7);
+    }
+}
@@ -0,0 +1,27 @@
+package frege.interpreter.benchmarks;
+
+import frege.interpreter.javasupport.CompilationCache;
+import frege.interpreter.javasupport.PackageCache;
+import frege.interpreter.javasupport.SourceTypeCache;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+
+final class Engines {
+
+    private Engines() {
+    }
+
+    static ScriptEngine newEngine() {
+        return new ScriptEngineManager().getEngineByName("frege");
+    }
+
+    /**
+     * Empties the process-wide caches, so that the next script is compiled from scratch.
+     */
+    static void clearCaches() {
+        CompilationCache.clear();
+        PackageCache.clear();
+        SourceTypeCache.clear();
+    }
+}
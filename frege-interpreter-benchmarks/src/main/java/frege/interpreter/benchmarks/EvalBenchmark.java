@@ -0,0 +1,55 @@
+package frege.interpreter.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expressions evaluated by a warm engine, with a number of definitions in the session.
+ * A repeated expression is served by the compilation cache; a fresh one is compiled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EvalBenchmark {
+
+    @Param({"0", "10", "100"})
+    public int definitions;
+
+    private ScriptEngine engine;
+    private int counter;
+
+    @Setup
+    public void setUp() throws ScriptException {
+        engine = Engines.newEngine();
+        for (int i = 0; i < definitions; i++) {
+            engine.eval("def" + i + " x = x + " + i);
+        }
+        engine.eval("1 + 2");
+    }
+
+    @Benchmark
+    public Object repeatedExpression() throws ScriptException {
+        return engine.eval("1 + 2");
+    }
+
+    @Benchmark
+    public Object freshExpression() throws ScriptException {
+        return engine.eval("1 + " + counter++);
+    }
+}
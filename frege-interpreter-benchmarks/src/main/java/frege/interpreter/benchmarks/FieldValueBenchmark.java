@@ -0,0 +1,65 @@
+package frege.interpreter.benchmarks;
+
+import frege.interpreter.javasupport.CompilationInfo;
+import frege.interpreter.javasupport.InterpreterClassLoader;
+import frege.interpreter.javasupport.JavaUtils;
+import frege.interpreter.javasupport.MemoryJavaCompiler;
+import frege.interpreter.javasupport.RuntimeStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the value of a script through {@link JavaUtils}, directly and on the sandbox pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FieldValueBenchmark {
+
+    private static final String CLASS_NAME = "bench.Value";
+
+    private InterpreterClassLoader loader;
+    private RuntimeStreams streams;
+
+    @Setup
+    public void setUp() {
+        final MemoryJavaCompiler compiler = new MemoryJavaCompiler(new InterpreterClassLoader());
+        final CompilationInfo info = compiler.compile(
+            "package bench; public class Value { public static final Object value = 42; }", CLASS_NAME);
+        if (!info.isSuccess()) {
+            throw new IllegalStateException(info.errorsAsString());
+        }
+        loader = compiler.classLoader();
+        streams = new RuntimeStreams(new StringReader(""), new StringWriter(), new StringWriter());
+    }
+
+    @Benchmark
+    public Object unsandboxed() {
+        return JavaUtils.fieldValue(CLASS_NAME, "value", loader);
+    }
+
+    @Benchmark
+    public Object withRuntime() {
+        return JavaUtils.fieldValueWithRuntime(CLASS_NAME, "value", streams, loader);
+    }
+
+    @Benchmark
+    public Object sandboxed() {
+        return JavaUtils.sandboxFieldValue(CLASS_NAME, "value", streams, loader);
+    }
+}
@@ -0,0 +1,79 @@
+package frege.interpreter.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of a call through {@link Invocable}, next to a plain Java call of the same function:
+ * in a session without bindings, through an interface from {@link Invocable#getInterface}, and in
+ * a session with a binding whose value does not change between calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class InvokeFunctionBenchmark {
+
+    public interface Squarer {
+        int square(int x);
+    }
+
+    private Invocable plain;
+    private Squarer squarer;
+    private Invocable withBindings;
+    private int x = 7;
+
+    @Setup
+    public void setUp() throws ScriptException, NoSuchMethodException {
+        final ScriptEngine plainEngine = Engines.newEngine();
+        plainEngine.eval("square :: Int -> Int\nsquare x = x * x");
+        plain = (Invocable) plainEngine;
+        plain.invokeFunction("square", 1);
+        squarer = plain.getInterface(Squarer.class);
+
+        final ScriptEngine boundEngine = Engines.newEngine();
+        boundEngine.put("offset :: Int", 1);
+        boundEngine.eval("square :: Int -> Int\nsquare x = x * x + offset");
+        withBindings = (Invocable) boundEngine;
+        withBindings.invokeFunction("square", 1);
+    }
+
+    @Benchmark
+    public int javaCall() {
+        return square(x);
+    }
+
+    @Benchmark
+    public Object invokeFunction() throws ScriptException, NoSuchMethodException {
+        return plain.invokeFunction("square", x);
+    }
+
+    @Benchmark
+    public int getInterface() {
+        return squarer.square(x);
+    }
+
+    @Benchmark
+    public Object invokeFunctionWithBindings() throws ScriptException, NoSuchMethodException {
+        return withBindings.invokeFunction("square", x);
+    }
+
+    private static int square(final int x) {
+        return x * x;
+    }
+}
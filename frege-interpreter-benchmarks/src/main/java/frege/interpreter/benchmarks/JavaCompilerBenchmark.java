@@ -0,0 +1,45 @@
+package frege.interpreter.benchmarks;
+
+import frege.interpreter.javasupport.CompilationInfo;
+import frege.interpreter.javasupport.InterpreterClassLoader;
+import frege.interpreter.javasupport.MemoryJavaCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compilations of a small Java source by the in-memory Java compiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JavaCompilerBenchmark {
+
+    private static final String SOURCE =
+        "package bench; public class Sum { public static int sum(int n) { int s = 0; "
+            + "for (int i = 0; i < n; i++) { s += i; } return s; } }";
+
+    private InterpreterClassLoader loader;
+
+    @Setup
+    public void setUp() {
+        loader = new InterpreterClassLoader();
+    }
+
+    @Benchmark
+    public CompilationInfo compile() {
+        return new MemoryJavaCompiler(loader).compile(SOURCE, "bench.Sum");
+    }
+}
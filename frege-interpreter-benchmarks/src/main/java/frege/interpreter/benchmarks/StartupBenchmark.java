@@ -0,0 +1,39 @@
+package frege.interpreter.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.script.ScriptException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A new engine and its first script. Every fork measures one cold start, so the first
+ * measurement of a fork also pays for loading the compilers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 5)
+@Fork(5)
+public class StartupBenchmark {
+
+    @Setup(Level.Iteration)
+    public void clearCaches() {
+        Engines.clearCaches();
+    }
+
+    @Benchmark
+    public Object firstEval() throws ScriptException {
+        return Engines.newEngine().eval("1 + 2");
+    }
+}
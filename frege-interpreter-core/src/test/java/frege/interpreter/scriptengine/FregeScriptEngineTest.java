@@ -5,14 +5,34 @@ import org.junit.Test;
 
 import javax.script.Bindings;
 import javax.script.Compilable;
+import javax.script.Invocable;
 import javax.script.CompiledScript;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+import frege.interpreter.javasupport.PassEvent;
+import frege.interpreter.javasupport.PassListener;
+import frege.scriptengine.FregeScriptEngine;
+
+import java.io.StringWriter;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static javax.script.ScriptContext.ENGINE_SCOPE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class FregeScriptEngineTest {
 
@@ -39,6 +59,35 @@ public class FregeScriptEngineTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void testRedefinition() throws ScriptException {
+        frege.eval("f x = x + 1");
+        frege.eval("data Color = Red | Green");
+        frege.eval("f x = x * 10");
+        frege.eval("data Color = Blue");
+        final Object actual = frege.eval("f 2");
+        final Object expected = 20;
+        assertEquals(expected, actual);
+        assertEquals("blue", frege.eval("case Blue of Blue -> \"blue\""));
+    }
+
+    @Test
+    public void testRedefinedConstructor() throws ScriptException {
+        frege.eval("data T = A | B\nisA A = true\nisA B = false");
+        frege.eval("data T = A Int");
+        assertEquals(3, frege.eval("case A 3 of A n -> n"));
+    }
+
+    @Test
+    public void testInstanceDefinition() throws ScriptException {
+        frege.eval("data Color = Red | Green");
+        frege.eval("instance Show Color where\n  show Red = \"red\"\n  show Green = \"green\"");
+        frege.eval("favourite = Green");
+        frege.eval("other = Red");
+        assertEquals("green", frege.eval("show favourite"));
+        assertEquals("red", frege.eval("show other"));
+    }
+
     @Test
     public void testDefinitionWithTypeAnn() throws ScriptException {
         frege.eval("f :: Int -> Int -> Int\n" +
@@ -68,6 +117,33 @@ public class FregeScriptEngineTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void testBindingNewValue() throws ScriptException {
+        frege.put("n :: Int", 1);
+        assertEquals(2, frege.eval("n + 1"));
+        frege.put("n :: Int", 5);
+        assertEquals(6, frege.eval("n + 1"));
+    }
+
+    @Test
+    public void testDefinitionWithRecompiledBindings() throws ScriptException {
+        frege.put("x :: Int", 5);
+        frege.eval("f y = x + y");
+        frege.put("z :: Int", 1);
+        frege.put("x :: Int", 10);
+        assertEquals(11, frege.eval("f 1"));
+    }
+
+    @Test
+    public void testDefinitionWithNewBindingValue() throws ScriptException {
+        frege.put("x :: Int", 5);
+        frege.eval("g y = x + y");
+        assertEquals(6, frege.eval("g 1"));
+        frege.put("x :: Int", 10);
+        assertEquals(11, frege.eval("g 1"));
+        assertEquals(21, ((Invocable) frege).invokeFunction("g", 11));
+    }
+
     @Test
     public void testBindingWithTypeAnn() throws ScriptException {
         frege.put("foo::String", "I am foo");
@@ -87,6 +163,265 @@ public class FregeScriptEngineTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void testCompiledExpressionWithBinding() throws ScriptException {
+        frege.put("n :: Int", 21);
+        assertEquals(21, frege.eval("n"));
+        final CompiledScript compiled = ((Compilable) frege).compile("n * 2");
+        assertEquals(42, compiled.eval());
+        assertEquals(42, compiled.eval());
+    }
+
+    @Test
+    public void testOutputToContextWriter() throws ScriptException {
+        final StringWriter out = new StringWriter();
+        frege.getContext().setWriter(out);
+        final Object actual = frege.eval("IO.performUnsafe (putStr \"hello\" >> return 42)");
+        assertEquals(42, actual);
+        assertEquals("hello", out.toString());
+    }
+
+    @Test
+    public void testEvalStreamOfInfiniteList() throws ScriptException {
+        final FregeScriptEngine.JFregeScriptEngine engine = (FregeScriptEngine.JFregeScriptEngine) frege;
+        final List<Object> actual = new ArrayList<>();
+        engine.evalStream("map (*2) [1..]").limit(4).forEach(actual::add);
+        assertEquals(java.util.Arrays.<Object>asList(2, 4, 6, 8), actual);
+    }
+
+    @Test
+    public void testPassListener() throws ScriptException {
+        final FregeScriptEngine.JFregeScriptEngine engine = (FregeScriptEngine.JFregeScriptEngine) frege;
+        final List<String> passes = new ArrayList<>();
+        engine.passMetrics().addListener(new PassListener() {
+            @Override
+            public void passCompleted(final PassEvent event) {
+                passes.add(event.pass());
+            }
+        });
+        engine.eval("let x = 6 in x * 7");
+        assertTrue(passes.contains("type check"));
+        assertTrue(passes.contains("run java compiler"));
+    }
+
+    @Test
+    public void testCompileBatch() throws ScriptException {
+        final FregeScriptEngine.JFregeScriptEngine engine = (FregeScriptEngine.JFregeScriptEngine) frege;
+        final List<CompiledScript> compiled = engine.compileBatch("1 + 2", "\"a\" ++ \"b\"", "undefinedName 1");
+        assertEquals(3, compiled.size());
+        assertEquals(3, compiled.get(0).eval());
+        assertEquals("ab", compiled.get(1).eval());
+        try {
+            compiled.get(2).eval();
+            fail("script with an undefined name should not evaluate");
+        } catch (RuntimeException | ScriptException expected) {
+        }
+    }
+
+    @Test
+    public void testCompileParallel() throws Exception {
+        final FregeScriptEngine.JFregeScriptEngine engine = (FregeScriptEngine.JFregeScriptEngine) frege;
+        final List<CompiledScript> compiled =
+            engine.compileParallel("3 * 4", "undefinedName 1", "reverse \"ab\"", "sum [1..10]");
+        assertEquals(4, compiled.size());
+        assertEquals(12, compiled.get(0).eval());
+        assertEquals("ba", compiled.get(2).eval());
+        assertEquals(55, compiled.get(3).eval());
+        try {
+            compiled.get(1).eval();
+            fail("script with an undefined name should not evaluate");
+        } catch (RuntimeException | ScriptException expected) {
+        }
+    }
+
+    @Test
+    public void testEvalAsync() throws Exception {
+        final FregeScriptEngine.JFregeScriptEngine engine = (FregeScriptEngine.JFregeScriptEngine) frege;
+        assertEquals(3, engine.evalAsync("1 + 2").get(10, TimeUnit.SECONDS));
+        engine.evalAsync("triple x = 3 * x").get(10, TimeUnit.SECONDS);
+        assertEquals(9, engine.evalAsync("triple 3", 10, TimeUnit.SECONDS).get());
+    }
+
+    @Test
+    public void testBackToBackEvalAsyncDefinitions() throws Exception {
+        final FregeScriptEngine.JFregeScriptEngine engine = (FregeScriptEngine.JFregeScriptEngine) frege;
+        final Future<Object> first = engine.evalAsync("double x = 2 * x");
+        final Future<Object> second = engine.evalAsync("triple x = 3 * x");
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+        assertEquals(13, frege.eval("double 2 + triple 3"));
+    }
+
+    @Test
+    public void testCompiledDefinitionAfterAnotherDefinition() throws ScriptException {
+        final CompiledScript compiled = ((Compilable) frege).compile("f = 1");
+        frege.eval("g = 2");
+        compiled.eval();
+        assertEquals(3, frege.eval("f + g"));
+    }
+
+    @Test
+    public void testEvalAsyncWithBindingsOfTheCall() throws Exception {
+        final FregeScriptEngine.JFregeScriptEngine engine = (FregeScriptEngine.JFregeScriptEngine) frege;
+        final CountDownLatch started = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            engine.setExecutors(new Executor() {
+                @Override
+                public void execute(final Runnable runnable) {
+                    runnable.run();
+                }
+            }, new Executor() {
+                @Override
+                public void execute(final Runnable runnable) {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                started.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            runnable.run();
+                        }
+                    });
+                }
+            });
+            engine.put("x :: Int", 5);
+            final Future<Object> result = engine.evalAsync("x + 1");
+            engine.put("x :: Int", 10);
+            assertEquals(10, engine.eval("x"));
+            started.countDown();
+            assertEquals(6, result.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFork() throws Exception {
+        final FregeScriptEngine.JFregeScriptEngine engine = (FregeScriptEngine.JFregeScriptEngine) frege;
+        engine.eval("double x = 2 * x");
+        final ScriptEngine tenant = engine.fork();
+        assertEquals(6, tenant.eval("double 3"));
+        tenant.eval("double x = x + x + 1");
+        assertEquals(7, tenant.eval("double 3"));
+        assertEquals(6, engine.eval("double 3"));
+    }
+
+    @Test
+    public void testSnapshotAndRestore() throws Exception {
+        final FregeScriptEngine.JFregeScriptEngine engine = (FregeScriptEngine.JFregeScriptEngine) frege;
+        engine.eval("data Shape = Square Int | Circle Int\narea (Square a) = a * a\narea (Circle r) = 3 * r * r");
+        final Path file = Files.createTempFile("session", ".snapshot");
+        try {
+            engine.snapshot(file);
+            final FregeScriptEngine.JFregeScriptEngine restored =
+                (FregeScriptEngine.JFregeScriptEngine) new ScriptEngineManager().getEngineByName("frege");
+            restored.restore(file);
+            assertEquals(16, restored.eval("area (Square 4)"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public interface Adder {
+        int add(int x, int y);
+    }
+
+    @Test
+    public void testInvocable() throws Exception {
+        frege.eval("add :: Int -> Int -> Int\nadd x y = x + y\ngreet name = \"Hello, \" ++ name");
+        final Invocable invocable = (Invocable) frege;
+        assertEquals(7, invocable.invokeFunction("add", 3, 4));
+        assertEquals("Hello, Frege", invocable.invokeFunction("greet", "Frege"));
+        assertEquals(5, invocable.getInterface(Adder.class).add(2, 3));
+        try {
+            invocable.invokeFunction("undefinedFunction", 1);
+            fail("an undefined function should not be found");
+        } catch (NoSuchMethodException expected) {
+        }
+    }
+
+    @Test
+    public void testInvokeRedefinedFunction() throws Exception {
+        final Invocable invocable = (Invocable) frege;
+        frege.eval("inc :: Int -> Int\ninc x = x + 1");
+        assertEquals(2, invocable.invokeFunction("inc", 1));
+        frege.eval("inc :: Int -> Int\ninc x = x + 10");
+        assertEquals(11, invocable.invokeFunction("inc", 1));
+        frege.put("k :: Int", 100);
+        frege.eval("plusK :: Int -> Int\nplusK x = x + k");
+        assertEquals(101, invocable.invokeFunction("plusK", 1));
+        frege.put("k :: Int", 200);
+        assertEquals(201, invocable.invokeFunction("plusK", 1));
+    }
+
+    @Test
+    public void testConcurrentEvals() throws Exception {
+        assertEquals("MULTITHREADED", frege.getFactory().getParameter("THREADING"));
+        frege.eval("square x = x * x");
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final int n = i;
+                results.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws ScriptException {
+                        return frege.eval("square " + n);
+                    }
+                }));
+            }
+            for (int i = 0; i < 8; i++) {
+                assertEquals(i * i, results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentEvalsWithBindings() throws Exception {
+        frege.put("n :: Int", 0);
+        assertEquals(0, frege.eval("n + 0"));
+        final Bindings shared = frege.getBindings(ENGINE_SCOPE);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                final int n = i;
+                results.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws ScriptException {
+                        final Bindings bindings = frege.createBindings();
+                        bindings.putAll(shared);
+                        bindings.put("n :: Int", n);
+                        final SimpleScriptContext context = new SimpleScriptContext();
+                        context.setBindings(bindings, ENGINE_SCOPE);
+                        return frege.eval("n + 0", context);
+                    }
+                }));
+            }
+            for (int i = 0; i < 16; i++) {
+                assertEquals(i, results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPooledFactory() throws ScriptException {
+        final FregeScriptEngine.FregeScriptEngineFactory factory = new FregeScriptEngine.FregeScriptEngineFactory(1);
+        try {
+            assertEquals(7, factory.getScriptEngine().eval("3 + 4"));
+            assertEquals(1, factory.poolStatistics().handedOut());
+        } finally {
+            factory.shutdownPool();
+        }
+    }
+
     @Test
     public void testModule() throws ScriptException {
         frege.eval("module foo.Foo where { bar = \"I am bar from foo\"}");
@@ -0,0 +1,142 @@
+package frege.interpreter.javasupport;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Stages of asynchronous script evaluation on executors.
+ *
+ * By default scripts are compiled on the {@link CompilerPool} and run on a pool of
+ * {@code frege.interpreter.execution.threads} daemon threads (by default, the number of processors),
+ * so that scripts which block or run long do not hold threads of the common fork-join pool, which the
+ * host uses for parallel streams and its own futures. Engines can be given other executors, such as
+ * executors of virtual threads on JDKs that have them.
+ * A stage that is cancelled or times out cancels the stage it depends on, so a script that is no
+ * longer wanted is not compiled or run if it has not started yet. Timeouts are scheduled on one
+ * shared daemon thread, so waiting for a script does not take a thread of its own.
+ */
+public final class AsyncStages {
+
+    private static final ScheduledThreadPoolExecutor timeouts = new ScheduledThreadPoolExecutor(1,
+        new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "frege-script-timeouts");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private static final ThreadPoolExecutor execution;
+
+    static {
+        timeouts.setRemoveOnCancelPolicy(true);
+        final int threads = Integer.getInteger("frege.interpreter.execution.threads",
+            java.lang.Runtime.getRuntime().availableProcessors());
+        execution = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "frege-script-" + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        execution.allowCoreThreadTimeOut(true);
+    }
+
+    private AsyncStages() {
+    }
+
+    public static Executor compileExecutor() {
+        return CompilerPool.executor();
+    }
+
+    public static Executor executionExecutor() {
+        return execution;
+    }
+
+    public static <T> CompletableFuture<T> supply(final Callable<T> stage, final Executor executor) {
+        return CompletableFuture.supplyAsync(new Supplier<T>() {
+            @Override
+            public T get() {
+                return call(stage);
+            }
+        }, executor);
+    }
+
+    /**
+     * A stage that runs when another one completes, and cancels it when it is cancelled itself.
+     */
+    public static <S, T> CompletableFuture<T> then(final CompletableFuture<S> source, final Stage<S, T> stage,
+                                                   final Executor executor) {
+        final CompletableFuture<T> result = source.thenApplyAsync(new java.util.function.Function<S, T>() {
+            @Override
+            public T apply(final S value) {
+                return call(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        return stage.apply(value);
+                    }
+                });
+            }
+        }, executor);
+        result.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(final T value, final Throwable failure) {
+                if (failure != null) {
+                    source.cancel(false);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * The given future, completed with a {@link TimeoutException} if it is not done in time.
+     */
+    public static <T> CompletableFuture<T> within(final CompletableFuture<T> future, final long timeout,
+                                                  final TimeUnit unit) {
+        final ScheduledFuture<?> expiry = timeouts.schedule(new Runnable() {
+            @Override
+            public void run() {
+                future.completeExceptionally(new TimeoutException());
+            }
+        }, timeout, unit);
+        future.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(final T value, final Throwable failure) {
+                expiry.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    private static <T> T call(final Callable<T> stage) {
+        try {
+            return stage.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    public interface Stage<S, T> {
+        T apply(S value) throws Exception;
+    }
+}
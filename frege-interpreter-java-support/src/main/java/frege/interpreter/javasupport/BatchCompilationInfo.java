@@ -0,0 +1,38 @@
+package frege.interpreter.javasupport;
+
+import java.util.Map;
+
+/**
+ * The outcome of compiling several independent sources together, per source.
+ */
+public class BatchCompilationInfo {
+
+    private final Map<String, CompilationInfo> results;
+    private final long elapsedNanos;
+
+    public BatchCompilationInfo(final Map<String, CompilationInfo> results, final long elapsedNanos) {
+        this.results = results;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public boolean isSuccess(final String sourceName) {
+        final CompilationInfo result = results.get(sourceName);
+        return result != null && result.isSuccess();
+    }
+
+    public String errorsAsString(final String sourceName) {
+        final CompilationInfo result = results.get(sourceName);
+        return result == null ? "" : result.errorsAsString();
+    }
+
+    public CompilationInfo result(final String sourceName) {
+        return results.get(sourceName);
+    }
+
+    /**
+     * The wall time of all the javac runs of the batch.
+     */
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+}
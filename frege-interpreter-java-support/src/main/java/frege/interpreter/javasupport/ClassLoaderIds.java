@@ -0,0 +1,55 @@
+package frege.interpreter.javasupport;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Stable ids and class paths of host class loaders, so that cache keys do not keep the loaders
+ * reachable and are cheap to compute.
+ */
+final class ClassLoaderIds {
+
+    private static final Map<ClassLoader, Long> ids = new WeakHashMap<>();
+    private static final Map<ClassLoader, String> classPaths = new WeakHashMap<>();
+    private static long nextId;
+
+    private ClassLoaderIds() {
+    }
+
+    static long hostId(final ClassLoader loader) {
+        final ClassLoader host = loader instanceof InterpreterClassLoader
+            ? ((InterpreterClassLoader) loader).hostClassLoader() : loader;
+        synchronized (ids) {
+            Long id = ids.get(host);
+            if (id == null) {
+                id = ++nextId;
+                ids.put(host, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * The class path of a host class loader, as text that is the same in every process.
+     */
+    static String classPath(final ClassLoader host) {
+        synchronized (classPaths) {
+            String classPath = classPaths.get(host);
+            if (classPath == null) {
+                if (host instanceof URLClassLoader) {
+                    final StringBuilder sb = new StringBuilder();
+                    for (final URL url : ((URLClassLoader) host).getURLs()) {
+                        sb.append(url).append('\n');
+                    }
+                    classPath = sb.toString();
+                } else {
+                    classPath = String.valueOf(host);
+                }
+                classPaths.put(host, classPath);
+            }
+            return classPath;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package frege.interpreter.javasupport;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The classes visible through a generation of interpreter classes, newer generations shadowing
+ * older ones, grouped by Frege package and by Java package.
+ *
+ * A table is never changed. It is a stack of levels, each holding some Frege packages with all
+ * their classes; a package in a level shadows the same package in the levels below. The table of
+ * a new generation puts a level with the packages the generation compiles on top of its parent's
+ * levels, which it shares, and merges it with the levels below that are not larger than it, like
+ * the digits of a binary counter. A table of n packages therefore has at most log n levels: adding
+ * a generation copies its own packages and, amortized, log n others, and a lookup visits at most
+ * log n levels, however many generations there are.
+ */
+final class ClassTable {
+
+    static final ClassTable EMPTY = new ClassTable(null, Collections.<String, Map<String, byte[]>>emptyMap(), 0);
+
+    private final ClassTable below;
+    private final Map<String, Map<String, byte[]>> packages;
+    private final TreeMap<String, Set<String>> packagesByJavaPackage;
+    private final int size;
+
+    private ClassTable(final ClassTable below, final Map<String, Map<String, byte[]>> packages, final int size) {
+        this.below = below;
+        this.packages = packages;
+        this.packagesByJavaPackage = new TreeMap<>();
+        for (final String packageName : packages.keySet()) {
+            final String javaPackage = PackageIndex.packageOf(packageName);
+            Set<String> packageNames = packagesByJavaPackage.get(javaPackage);
+            if (packageNames == null) {
+                packageNames = new HashSet<>();
+                packagesByJavaPackage.put(javaPackage, packageNames);
+            }
+            packageNames.add(packageName);
+        }
+        this.size = size;
+    }
+
+    /**
+     * The table of a new generation with the given classes on top of this one.
+     */
+    ClassTable with(final Map<String, byte[]> classes) {
+        if (classes.isEmpty()) {
+            return this;
+        }
+        Map<String, Map<String, byte[]>> level = new HashMap<>();
+        int newSize = size;
+        for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            final String packageName = packageOf(entry.getKey());
+            Map<String, byte[]> packageClasses = level.get(packageName);
+            if (packageClasses == null) {
+                final Map<String, byte[]> visible = packageClasses(packageName);
+                packageClasses = visible == null ? new HashMap<String, byte[]>() : new HashMap<>(visible);
+                level.put(packageName, packageClasses);
+            }
+            if (packageClasses.put(entry.getKey(), entry.getValue()) == null) {
+                newSize++;
+            }
+        }
+        ClassTable base = this;
+        while (base.below != null && level.size() >= base.packages.size()) {
+            final Map<String, Map<String, byte[]>> merged = new HashMap<>(base.packages);
+            merged.putAll(level);
+            level = merged;
+            base = base.below;
+        }
+        return new ClassTable(base, level, newSize);
+    }
+
+    byte[] get(final String className) {
+        final Map<String, byte[]> classes = packageClasses(packageOf(className));
+        return classes == null ? null : classes.get(className);
+    }
+
+    /**
+     * The package class of a Frege package and its nested classes.
+     */
+    Map<String, byte[]> classesOf(final String packageName) {
+        final Map<String, byte[]> classes = packageClasses(packageName);
+        return classes == null ? Collections.<String, byte[]>emptyMap() : Collections.unmodifiableMap(classes);
+    }
+
+    /**
+     * Adds the names of the classes in a Java package, and in its subpackages if {@code recurse} is set.
+     */
+    void collect(final String javaPackage, final boolean recurse, final Collection<? super String> result) {
+        final Set<String> seen = new HashSet<>();
+        for (ClassTable level = this; level != null; level = level.below) {
+            level.collect(level.packagesByJavaPackage.get(javaPackage), seen, result);
+            if (recurse) {
+                final Map<String, Set<String>> subpackages = javaPackage.isEmpty()
+                    ? level.packagesByJavaPackage.tailMap(javaPackage, false)
+                    : level.packagesByJavaPackage.subMap(javaPackage + ".", javaPackage + "/");
+                for (final Set<String> packageNames : subpackages.values()) {
+                    level.collect(packageNames, seen, result);
+                }
+            }
+        }
+    }
+
+    /**
+     * All the classes, in a new map.
+     */
+    Map<String, byte[]> classes() {
+        final Map<String, byte[]> result = new HashMap<>(size * 2);
+        final Set<String> seen = new HashSet<>();
+        for (ClassTable level = this; level != null; level = level.below) {
+            for (final Map.Entry<String, Map<String, byte[]>> entry : level.packages.entrySet()) {
+                if (seen.add(entry.getKey())) {
+                    result.putAll(entry.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int levels() {
+        return below == null ? 0 : 1 + below.levels();
+    }
+
+    /**
+     * The classes of a Frege package in the topmost level that has it, or null.
+     */
+    private Map<String, byte[]> packageClasses(final String packageName) {
+        for (ClassTable level = this; level != null; level = level.below) {
+            final Map<String, byte[]> classes = level.packages.get(packageName);
+            if (classes != null) {
+                return classes;
+            }
+        }
+        return null;
+    }
+
+    private void collect(final Set<String> packageNames, final Set<String> seen,
+                         final Collection<? super String> result) {
+        if (packageNames != null) {
+            for (final String packageName : packageNames) {
+                if (seen.add(packageName)) {
+                    result.addAll(packages.get(packageName).keySet());
+                }
+            }
+        }
+    }
+
+    /**
+     * The Frege package of a class: the class itself, or the class it is nested in.
+     */
+    static String packageOf(final String className) {
+        final int nested = className.indexOf('$');
+        return nested < 0 ? className : className.substring(0, nested);
+    }
+}
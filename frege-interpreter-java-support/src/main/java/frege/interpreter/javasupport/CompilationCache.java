@@ -0,0 +1,153 @@
+package frege.interpreter.javasupport;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Process-wide cache of compiled scripts, keyed by a hash of everything the compilation depends on:
+ * the script, the definitions it is compiled against, the compiler flags, the host class loader
+ * and the classes of the interpreter session. An entry holds the class bytes of the script and a
+ * {@link ScriptSummary}, nothing of the compiler state or the session it was compiled in, so entries
+ * are bounded by their actual size and do not keep discarded sessions reachable.
+ *
+ * Compiled modules are also written to the {@link DiskBytecodeStore#shared() disk store}, if one is
+ * configured, so that a restarted process finds their classes without running the compilers. The
+ * disk tier does not depend on the identity of the host class loader, only on its class path.
+ */
+public final class CompilationCache {
+
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final LruCache<String, Entry> cache = new LruCache<>(
+        Long.getLong("frege.interpreter.compilationCache.maxBytes", DEFAULT_MAX_BYTES),
+        new LruCache.Weigher<Entry>() {
+            @Override
+            public long weigh(final Entry entry) {
+                return entry.bytes;
+            }
+        });
+
+    private CompilationCache() {
+    }
+
+    public static String key(final InterpreterClassLoader loader,
+                             final String source,
+                             final String predefs,
+                             final String moduleName,
+                             final String flags,
+                             final boolean useSandbox) {
+        return ContentHash.of(normalize(source), predefs, moduleName, flags, String.valueOf(useSandbox),
+            ClassLoaderIds.classPath(loader.hostClassLoader()), loader.fingerprint());
+    }
+
+    /**
+     * The cached compilation for a key, or the classes of a module from the disk store,
+     * in which case the entry has no summary.
+     */
+    public static Entry get(final InterpreterClassLoader loader, final String key) {
+        final Entry entry = cache.get(memoryKey(loader, key));
+        if (entry != null) {
+            return entry;
+        }
+        final DiskBytecodeStore store = DiskBytecodeStore.shared();
+        final DiskBytecodeStore.Record record = store == null ? null : store.get(key);
+        return record == null ? null : new Entry(null, record.descriptor(), record.classes());
+    }
+
+    public static void put(final String key,
+                           final ScriptSummary summary,
+                           final InterpreterClassLoader loader,
+                           final boolean persistent) {
+        final String packageName = summary.moduleName();
+        final Map<String, byte[]> classes = loader.classesOf(packageName);
+        cache.put(memoryKey(loader, key), new Entry(summary, packageName, classes));
+        final DiskBytecodeStore store = DiskBytecodeStore.shared();
+        if (persistent && store != null) {
+            try {
+                store.put(key, packageName, classes);
+            } catch (IOException e) {
+                // the disk tier is an optimization, the compilation itself succeeded
+            }
+        }
+    }
+
+    /**
+     * A loader with the classes of an entry. A module whose classes the loader already has is
+     * not defined again; the classes of other scripts are defined in a new generation, so that
+     * the values of an expression are evaluated again.
+     */
+    public static InterpreterClassLoader load(final Entry entry, final InterpreterClassLoader loader,
+                                              final boolean module) {
+        return module && hasClasses(loader, entry.classes) ? loader : loader.withClasses(entry.classes);
+    }
+
+    public static LruCache.Statistics statistics() {
+        return cache.statistics();
+    }
+
+    public static void clear() {
+        cache.clear();
+    }
+
+    private static String memoryKey(final InterpreterClassLoader loader, final String key) {
+        return ClassLoaderIds.hostId(loader) + ":" + key;
+    }
+
+    private static boolean hasClasses(final InterpreterClassLoader loader, final Map<String, byte[]> classes) {
+        for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            final byte[] loaded = loader.classBytes(entry.getKey());
+            if (loaded != entry.getValue() && !Arrays.equals(loaded, entry.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String normalize(final String source) {
+        final StringBuilder sb = new StringBuilder(source.length());
+        for (final String line : source.split("\r\n|\r|\n")) {
+            int end = line.length();
+            while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+                end--;
+            }
+            sb.append(line, 0, end).append('\n');
+        }
+        int end = sb.length();
+        while (end > 0 && sb.charAt(end - 1) == '\n') {
+            end--;
+        }
+        sb.setLength(end);
+        return sb.toString();
+    }
+
+    public static final class Entry {
+        private final ScriptSummary summary;
+        private final String moduleName;
+        private final Map<String, byte[]> classes;
+        private final long bytes;
+
+        private Entry(final ScriptSummary summary, final String moduleName, final Map<String, byte[]> classes) {
+            this.summary = summary;
+            this.moduleName = moduleName;
+            this.classes = classes;
+            long size = summary == null ? 0 : summary.weight();
+            for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                size += entry.getValue().length + 2L * entry.getKey().length();
+            }
+            this.bytes = size;
+        }
+
+        public ScriptSummary summary() {
+            return summary;
+        }
+
+        public String moduleName() {
+            return moduleName;
+        }
+
+        public Map<String, byte[]> classes() {
+            return classes;
+        }
+    }
+}
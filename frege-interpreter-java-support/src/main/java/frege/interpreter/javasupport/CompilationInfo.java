@@ -4,27 +4,52 @@ import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
 import javax.tools.JavaFileObject;
 import javax.xml.stream.events.Attribute;
+import java.util.List;
 import java.util.Locale;
 
 public class CompilationInfo {
 
     private final boolean isSuccess;
-    private final DiagnosticCollector<JavaFileObject> diagnostics;
+    private final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+    private final long elapsedNanos;
 
     public CompilationInfo(final boolean isSuccess,
                            final DiagnosticCollector<JavaFileObject> diagnostics) {
+        this(isSuccess, diagnostics, 0);
+    }
+
+    public CompilationInfo(final boolean isSuccess,
+                           final DiagnosticCollector<JavaFileObject> diagnostics,
+                           final long elapsedNanos) {
+        this(isSuccess, diagnostics.getDiagnostics(), elapsedNanos);
+    }
+
+    public CompilationInfo(final boolean isSuccess,
+                           final List<Diagnostic<? extends JavaFileObject>> diagnostics,
+                           final long elapsedNanos) {
         this.isSuccess = isSuccess;
         this.diagnostics = diagnostics;
+        this.elapsedNanos = elapsedNanos;
     }
 
     public boolean isSuccess() {
         return isSuccess;
     }
 
+    public List<Diagnostic<? extends JavaFileObject>> diagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * The wall time javac took for this compilation.
+     */
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+
     public String errorsAsString() {
         final StringBuilder msgs = new StringBuilder();
-        for (final Diagnostic<? extends JavaFileObject> diagnostic : diagnostics
-            .getDiagnostics()) {
+        for (final Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
             final JavaFileObject source = diagnostic.getSource();
             final String message = String.format("Error:%s[%s:%s]: %s\n",
                 source != null ? source.getName() : "<unknown source>",
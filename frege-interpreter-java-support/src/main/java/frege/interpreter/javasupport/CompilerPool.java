@@ -0,0 +1,75 @@
+package frege.interpreter.javasupport;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * The fork-join pool that compiles independent scripts in parallel, sized by the system property
+ * {@code frege.interpreter.compile.parallelism} (by default, the number of processors).
+ *
+ * A task counts its compiler passes for the {@link PassMetrics} of the thread that submitted it.
+ */
+public final class CompilerPool {
+
+    private static final ForkJoinPool pool = new ForkJoinPool(
+        Integer.getInteger("frege.interpreter.compile.parallelism", java.lang.Runtime.getRuntime().availableProcessors()),
+        new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            @Override
+            public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+                final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("frege-compiler-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }
+        },
+        null, false);
+
+    private CompilerPool() {
+    }
+
+    public static int parallelism() {
+        return pool.getParallelism();
+    }
+
+    public static Executor executor() {
+        return pool;
+    }
+
+    public static ForkJoinTask<?> submit(final Runnable task) {
+        final PassMetrics metrics = PassMetrics.current();
+        return pool.submit(new Runnable() {
+            @Override
+            public void run() {
+                final PassMetrics previous = PassMetrics.enter(metrics);
+                try {
+                    task.run();
+                } finally {
+                    PassMetrics.exit(previous);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for a task, and describes what it threw, or returns null if it completed normally.
+     */
+    public static String failure(final ForkJoinTask<?> task) {
+        try {
+            task.join();
+            return null;
+        } catch (RuntimeException | Error e) {
+            return String.valueOf(e);
+        }
+    }
+
+    /**
+     * A map the tasks of a parallel compilation can add their classes to.
+     */
+    public static Map<String, byte[]> newClassMap() {
+        return new ConcurrentHashMap<>();
+    }
+}
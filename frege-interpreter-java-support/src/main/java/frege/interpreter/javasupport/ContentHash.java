@@ -0,0 +1,65 @@
+package frege.interpreter.javasupport;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+public final class ContentHash {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final Map<byte[], String> classHashes =
+        Collections.synchronizedMap(new WeakHashMap<byte[], String>());
+
+    private ContentHash() {
+    }
+
+    public static String of(final byte[] bytes) {
+        return toHex(digest().digest(bytes));
+    }
+
+    /**
+     * The hash of class bytes, remembered for as long as the array is in use.
+     */
+    public static String ofClass(final byte[] bytecode) {
+        String hash = classHashes.get(bytecode);
+        if (hash == null) {
+            hash = of(bytecode);
+            classHashes.put(bytecode, hash);
+        }
+        return hash;
+    }
+
+    public static String of(final String... parts) {
+        final MessageDigest digest = digest();
+        for (final String part : parts) {
+            final byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+            digest.update(intToBytes(bytes.length));
+            digest.update(bytes);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] intToBytes(final int n) {
+        return new byte[] {(byte) (n >>> 24), (byte) (n >>> 16), (byte) (n >>> 8), (byte) n};
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,275 @@
+package frege.interpreter.javasupport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable table of the definition modules compiled in an interpreter session.
+ * Every definition batch is compiled once into its own module and later scripts import it;
+ * a name is owned by the module that defined it last, so redefinitions hide the older symbols.
+ *
+ * The names of a module are import items: a type or class is listed with its constructors or
+ * members, as in {@code T(A, B)}, and is hidden together with them when any of them is defined
+ * again. A module without names, such as one that only declares instances, is always imported.
+ *
+ * Definitions compiled earlier keep referring to the symbols they were compiled against: a
+ * function that uses a name which is defined again later still uses the old definition, until
+ * the function itself is defined again.
+ */
+public final class DefinitionStore {
+
+    public static final DefinitionStore EMPTY = new DefinitionStore(0,
+        Collections.<String>emptyList(),
+        Collections.<String, String[]>emptyMap(),
+        Collections.<String, String>emptyMap());
+
+    private static final String MODULE_PREFIX = "frege.interpreter.Defs";
+
+    private final int generation;
+    private final List<String> modules;
+    private final Map<String, String[]> namesByModule;
+    private final Map<String, String> owners;
+    private volatile String imports;
+
+    private DefinitionStore(final int generation,
+                            final List<String> modules,
+                            final Map<String, String[]> namesByModule,
+                            final Map<String, String> owners) {
+        this.generation = generation;
+        this.modules = modules;
+        this.namesByModule = namesByModule;
+        this.owners = owners;
+    }
+
+    /**
+     * A store with the given state, as written by {@link SessionSnapshot}.
+     */
+    static DefinitionStore restore(final int generation,
+                                   final List<String> modules,
+                                   final Map<String, String[]> namesByModule,
+                                   final Map<String, String> owners) {
+        return new DefinitionStore(generation, new ArrayList<>(modules),
+            new HashMap<>(namesByModule), new HashMap<>(owners));
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    Map<String, String> owners() {
+        return Collections.unmodifiableMap(owners);
+    }
+
+    public boolean isEmpty() {
+        return modules.isEmpty();
+    }
+
+    public int size() {
+        return modules.size();
+    }
+
+    public String nextModuleName() {
+        return moduleNameAt(0);
+    }
+
+    /**
+     * The name of a module after the next one, for definitions compiled side by side.
+     */
+    public String moduleNameAt(final int offset) {
+        return MODULE_PREFIX + (generation + 1 + offset);
+    }
+
+    public String[] moduleNames() {
+        return modules.toArray(new String[0]);
+    }
+
+    public String owner(final String name) {
+        return owners.get(name);
+    }
+
+    public List<String> modules() {
+        return Collections.unmodifiableList(modules);
+    }
+
+    public String[] names(final String moduleName) {
+        final String[] names = namesByModule.get(moduleName);
+        return names == null ? new String[0] : names.clone();
+    }
+
+    /**
+     * Whether a module of this name has been defined, so that the name cannot be used again.
+     */
+    public boolean isDefined(final String moduleName) {
+        return namesByModule.containsKey(moduleName);
+    }
+
+    /**
+     * This store with a new module. A module name is never defined twice: a script compiled
+     * against an older store has to check {@link #isDefined} and be compiled again if its name
+     * was taken in the meantime.
+     *
+     * @throws IllegalStateException if a module of this name has been defined
+     */
+    public DefinitionStore define(final String moduleName, final String[] names) {
+        if (namesByModule.containsKey(moduleName)) {
+            throw new IllegalStateException("Definition module already defined: " + moduleName);
+        }
+        final List<String> newModules = new ArrayList<>(modules.size() + 1);
+        newModules.addAll(modules);
+        newModules.add(moduleName);
+        final Map<String, String[]> newNamesByModule = new HashMap<>(namesByModule);
+        newNamesByModule.put(moduleName, names.clone());
+        final Map<String, String> newOwners = new HashMap<>(owners);
+        for (final String item : names) {
+            for (final String name : itemNames(item)) {
+                newOwners.put(name, moduleName);
+            }
+        }
+        return new DefinitionStore(Math.max(generation + 1, moduleNumber(moduleName)),
+            newModules, newNamesByModule, newOwners);
+    }
+
+    /**
+     * Whether later scripts import a module: it has no names, or it still owns one of its items.
+     */
+    public boolean isVisible(final String moduleName) {
+        final String[] names = namesByModule.get(moduleName);
+        if (names == null) {
+            return false;
+        }
+        if (names.length == 0) {
+            return true;
+        }
+        for (final String item : names) {
+            if (!isHidden(moduleName, item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This store without a module and the names it owns; the names of later modules are kept.
+     */
+    public DefinitionStore without(final String moduleName) {
+        if (!namesByModule.containsKey(moduleName)) {
+            return this;
+        }
+        final List<String> newModules = new ArrayList<>(modules);
+        newModules.remove(moduleName);
+        final Map<String, String[]> newNamesByModule = new HashMap<>(namesByModule);
+        newNamesByModule.remove(moduleName);
+        final Map<String, String> newOwners = new HashMap<>(owners);
+        newOwners.values().removeAll(Collections.singleton(moduleName));
+        return new DefinitionStore(generation, newModules, newNamesByModule, newOwners);
+    }
+
+    /**
+     * The names this store defines that a later store of the session no longer defines, because
+     * their modules were dropped without being defined again, sorted.
+     */
+    public String[] droppedNames(final DefinitionStore later) {
+        final List<String> dropped = new ArrayList<>();
+        if (later == this) {
+            return new String[0];
+        }
+        for (final String name : owners.keySet()) {
+            if (!later.owners.containsKey(name)) {
+                dropped.add(name);
+            }
+        }
+        Collections.sort(dropped);
+        return dropped.toArray(new String[0]);
+    }
+
+    /**
+     * Import declarations for all the modules that still own at least one name,
+     * hiding the names that were redefined by a later module.
+     */
+    public String imports() {
+        String result = imports;
+        if (result == null) {
+            final StringBuilder sb = new StringBuilder();
+            for (final String module : modules) {
+                final List<String> hidden = new ArrayList<>();
+                final String[] names = namesByModule.get(module);
+                for (final String item : names) {
+                    if (isHidden(module, item)) {
+                        hidden.add(item);
+                    }
+                }
+                if (names.length > 0 && hidden.size() == names.length) {
+                    continue;
+                }
+                sb.append("import ").append(module);
+                if (!hidden.isEmpty()) {
+                    sb.append(" hiding (").append(join(hidden)).append(')');
+                }
+                sb.append('\n');
+            }
+            result = sb.toString();
+            imports = result;
+        }
+        return result;
+    }
+
+    /**
+     * Whether one of the names of an item of a module was defined again by a later module.
+     */
+    private boolean isHidden(final String moduleName, final String item) {
+        for (final String name : itemNames(item)) {
+            if (!moduleName.equals(owners.get(name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The names of an import item: a name, or a type or class followed by its members in parentheses.
+     */
+    static String[] itemNames(final String item) {
+        final int open = item.indexOf('(');
+        if (open <= 0 || !item.endsWith(")")) {
+            return new String[] { item };
+        }
+        final String[] members = item.substring(open + 1, item.length() - 1).split(",");
+        final String[] names = new String[members.length + 1];
+        names[0] = item.substring(0, open).trim();
+        for (int i = 0; i < members.length; i++) {
+            names[i + 1] = members[i].trim();
+        }
+        return names;
+    }
+
+    private static int moduleNumber(final String moduleName) {
+        if (moduleName.startsWith(MODULE_PREFIX)) {
+            try {
+                return Integer.parseInt(moduleName.substring(MODULE_PREFIX.length()));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    private static String join(final List<String> names) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String name : names) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(name);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DefinitionStore%s", Arrays.toString(modules.toArray()));
+    }
+}
@@ -0,0 +1,432 @@
+package frege.interpreter.javasupport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of compiled classes, read through a memory mapping.
+ *
+ * Every record holds a key, a descriptor (the name of the compiled module) and the class bytes,
+ * followed by a CRC32 of the record. Records are only ever appended; a later record for a key
+ * replaces an earlier one, and {@link #compact()} rewrites the file with the live records only.
+ * A truncated or corrupt tail, for example after a crash during an append, is cut off on open.
+ *
+ * The file can be shared by several processes. Appends and compactions hold a lock on a
+ * {@code .lock} file next to it, and an append first reads the records other processes appended
+ * since. A compaction moves a new file into place and marks the old one as retired, so that the
+ * other processes reopen the file before their next append. A lookup reads the offset and the
+ * mapping of the same file, so one that runs during a compaction still reads the old file.
+ */
+public final class DiskBytecodeStore {
+
+    private static final int FILE_MAGIC = 0x46524742; // FRGB
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * Written in place of a record length at the end of a file that a compaction has replaced.
+     */
+    private static final int RETIRED = -1;
+
+    /**
+     * The file is read through one mapping, so it does not grow beyond the largest one.
+     */
+    private static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * File locks are held by the process, so the stores of one file in this process also share a monitor.
+     */
+    private static final Map<Path, Object> monitors = new ConcurrentHashMap<>();
+
+    private static volatile DiskBytecodeStore shared;
+    private static volatile boolean sharedInitialized;
+
+    private final Path path;
+    private final String compilerVersion;
+    private final Object monitor;
+    private final FileChannel lockChannel;
+    private volatile OpenFile file;
+
+    public DiskBytecodeStore(final Path path, final String compilerVersion) throws IOException {
+        this.path = path.toAbsolutePath().normalize();
+        this.compilerVersion = compilerVersion;
+        this.monitor = monitors.computeIfAbsent(this.path, p -> new Object());
+        final File parent = this.path.getParent().toFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        lockChannel = FileChannel.open(this.path.resolveSibling(this.path.getFileName() + ".lock"),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        synchronized (monitor) {
+            final FileLock lock = lockChannel.lock();
+            try {
+                file = open();
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * The store configured with the {@code frege.interpreter.bytecodeCache.file} system property, if any.
+     */
+    public static DiskBytecodeStore shared() {
+        if (!sharedInitialized) {
+            synchronized (DiskBytecodeStore.class) {
+                if (!sharedInitialized) {
+                    final String file = System.getProperty("frege.interpreter.bytecodeCache.file");
+                    if (file != null) {
+                        try {
+                            shared = new DiskBytecodeStore(Paths.get(file), defaultCompilerVersion());
+                        } catch (IOException e) {
+                            throw new IllegalStateException("Cannot open bytecode cache " + file, e);
+                        }
+                    }
+                    sharedInitialized = true;
+                }
+            }
+        }
+        return shared;
+    }
+
+    public static String defaultCompilerVersion() {
+        return frege.Version.version + "/" + System.getProperty("java.specification.version");
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public long size() {
+        final OpenFile current = file;
+        return current == null ? 0 : current.size;
+    }
+
+    public int entries() {
+        final OpenFile current = file;
+        return current == null ? 0 : current.index.size();
+    }
+
+    /**
+     * The bytes taken by the latest record of every key; the rest of the file is reclaimed by
+     * {@link #compact()}.
+     */
+    public long liveBytes() {
+        final OpenFile current = file;
+        if (current == null) {
+            return 0;
+        }
+        final MappedByteBuffer mapped = current.mapped;
+        long live = 0;
+        for (final long offset : current.index.values()) {
+            live += recordSize(mapped.getInt(position(offset)));
+        }
+        return live;
+    }
+
+    public Record get(final String key) {
+        final OpenFile current = file;
+        if (current == null) {
+            return null;
+        }
+        final Long offset = current.index.get(versioned(key));
+        if (offset == null) {
+            return null;
+        }
+        final ByteBuffer buffer = current.mapped.duplicate();
+        buffer.position(position(offset));
+        return readRecord(buffer);
+    }
+
+    /**
+     * Appends a record at the end of the file. A record that would grow the file beyond the
+     * largest mapping is not stored.
+     */
+    public void put(final String key, final String descriptor, final Map<String, byte[]> classes)
+            throws IOException {
+        final byte[] record = encode(versioned(key), descriptor, classes);
+        synchronized (monitor) {
+            final FileLock lock = lockChannel.lock();
+            try {
+                final OpenFile current = current();
+                final long position = current.channel.size();
+                if (position + record.length > MAX_SIZE) {
+                    return;
+                }
+                write(current.channel, ByteBuffer.wrap(record), position);
+                current.size = position + record.length;
+                current.mapped = current.channel.map(FileChannel.MapMode.READ_ONLY, 0, current.size);
+                current.index.put(versioned(key), position);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Rewrites the file with only the latest record of every key.
+     */
+    public void compact() throws IOException {
+        synchronized (monitor) {
+            final FileLock lock = lockChannel.lock();
+            try {
+                final OpenFile current = current();
+                final Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+                try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    long position = write(out, header(), 0);
+                    for (final long offset : current.index.values()) {
+                        final ByteBuffer buffer = current.mapped.duplicate();
+                        buffer.position(position(offset));
+                        buffer.limit(buffer.position() + recordSize(buffer.getInt(buffer.position())));
+                        position = write(out, buffer, position);
+                    }
+                    out.force(true);
+                }
+                Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                final ByteBuffer retired = ByteBuffer.allocate(4).putInt(0, RETIRED);
+                write(current.channel, retired, current.channel.size());
+                current.channel.close();
+                file = open();
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        synchronized (monitor) {
+            final OpenFile current = file;
+            file = null;
+            if (current != null) {
+                current.channel.close();
+            }
+            lockChannel.close();
+        }
+    }
+
+    /**
+     * The open file with the records other processes appended since, reopened if a compaction
+     * replaced it. Called with the file lock held.
+     */
+    private OpenFile current() throws IOException {
+        final OpenFile current = file;
+        if (current == null) {
+            throw new IOException("Bytecode cache is closed: " + path);
+        }
+        final long fileSize = Math.min(current.channel.size(), MAX_SIZE);
+        if (fileSize > current.size) {
+            current.mapped = current.channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            final long end = scan(current, current.size);
+            if (isRetired(current.mapped, end)) {
+                current.channel.close();
+                file = open();
+                return file;
+            }
+            current.size = end;
+        }
+        if (current.channel.size() > current.size) {
+            current.channel.truncate(current.size);
+            current.mapped = current.channel.map(FileChannel.MapMode.READ_ONLY, 0, current.size);
+        }
+        return current;
+    }
+
+    /**
+     * Opens the file, writing a header if it has none and cutting off a bad tail. Called with the
+     * file lock held.
+     */
+    private OpenFile open() throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        if (!hasHeader(channel)) {
+            channel.truncate(0);
+            write(channel, header(), 0);
+        }
+        final OpenFile opened = new OpenFile(channel);
+        opened.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), MAX_SIZE));
+        opened.size = scan(opened, HEADER_SIZE);
+        if (opened.size < channel.size()) {
+            channel.truncate(opened.size);
+            opened.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, opened.size);
+        }
+        return opened;
+    }
+
+    /**
+     * Indexes the valid records from an offset on, and returns the offset after the last one.
+     */
+    private static long scan(final OpenFile opened, final long from) {
+        final ByteBuffer buffer = opened.mapped.duplicate();
+        long end = from;
+        while (buffer.limit() - end >= 4) {
+            final int start = position(end);
+            final int length = buffer.getInt(start);
+            if (length < 0 || buffer.limit() - end < recordSize(length) || !checksumMatches(buffer, start, length)) {
+                break;
+            }
+            buffer.position(start + 4);
+            opened.index.put(readString(buffer), end);
+            end += recordSize(length);
+        }
+        return end;
+    }
+
+    private static boolean isRetired(final ByteBuffer mapped, final long end) {
+        return mapped.limit() - end >= 4 && mapped.getInt(position(end)) == RETIRED;
+    }
+
+    private static boolean hasHeader(final FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return false;
+        }
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                return false;
+            }
+        }
+        return header.getInt(0) == FILE_MAGIC && header.getInt(4) == FORMAT_VERSION;
+    }
+
+    private static long write(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        long end = position;
+        while (buffer.hasRemaining()) {
+            end += channel.write(buffer, end);
+        }
+        return end;
+    }
+
+    /**
+     * The position of an offset in a mapping; offsets never exceed {@link #MAX_SIZE}.
+     */
+    private static int position(final long offset) {
+        return Math.toIntExact(offset);
+    }
+
+    private static Record readRecord(final ByteBuffer buffer) {
+        final int start = buffer.position();
+        final int length = buffer.getInt();
+        if (!checksumMatches(buffer, start, length)) {
+            return null;
+        }
+        readString(buffer);
+        final String descriptor = readString(buffer);
+        final int count = buffer.getInt();
+        final Map<String, byte[]> classes = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            final String className = readString(buffer);
+            final byte[] bytecode = new byte[buffer.getInt()];
+            buffer.get(bytecode);
+            classes.put(className, bytecode);
+        }
+        return new Record(descriptor, classes);
+    }
+
+    private static boolean checksumMatches(final ByteBuffer buffer, final int start, final int length) {
+        final ByteBuffer body = buffer.duplicate();
+        body.position(start + 4);
+        body.limit(start + 4 + length);
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+        return crc.getValue() == buffer.getLong(start + 4 + length);
+    }
+
+    private static byte[] encode(final String key, final String descriptor, final Map<String, byte[]> classes)
+            throws IOException {
+        final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        final DataOutputStream body = new DataOutputStream(bodyBytes);
+        writeString(body, key);
+        writeString(body, descriptor);
+        body.writeInt(classes.size());
+        for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            writeString(body, entry.getKey());
+            body.writeInt(entry.getValue().length);
+            body.write(entry.getValue());
+        }
+        body.flush();
+        final byte[] content = bodyBytes.toByteArray();
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+        final ByteBuffer record = ByteBuffer.allocate(recordSize(content.length));
+        record.putInt(content.length);
+        record.put(content);
+        record.putLong(crc.getValue());
+        return record.array();
+    }
+
+    private static int recordSize(final int length) {
+        return 4 + length + 8;
+    }
+
+    private static ByteBuffer header() {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(FILE_MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.flip();
+        return header;
+    }
+
+    private static void writeString(final DataOutputStream out, final String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String versioned(final String key) {
+        return key + "@" + compilerVersion;
+    }
+
+    private static final class OpenFile {
+        private final FileChannel channel;
+        private final Map<String, Long> index = new ConcurrentHashMap<>();
+        private volatile MappedByteBuffer mapped;
+        private long size;
+
+        private OpenFile(final FileChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    public static final class Record {
+        private final String descriptor;
+        private final Map<String, byte[]> classes;
+
+        private Record(final String descriptor, final Map<String, byte[]> classes) {
+            this.descriptor = descriptor;
+            this.classes = Collections.unmodifiableMap(classes);
+        }
+
+        public String descriptor() {
+            return descriptor;
+        }
+
+        public Map<String, byte[]> classes() {
+            return classes;
+        }
+    }
+}
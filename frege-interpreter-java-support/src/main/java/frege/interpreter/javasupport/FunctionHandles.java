@@ -0,0 +1,67 @@
+package frege.interpreter.javasupport;
+
+import frege.run8.Lazy;
+import frege.run8.Thunk;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Handles that call compiled top-level Frege functions with Java values.
+ *
+ * A handle takes the arguments as an {@code Object[]} and returns an {@code Object}: lazy
+ * parameters get their argument as an evaluated thunk, primitive parameters are unboxed, and
+ * a thunk returned by the function is evaluated.
+ */
+final class FunctionHandles {
+
+    private static final MethodHandle LAZY;
+    private static final MethodHandle UNWRAP;
+
+    static {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            LAZY = lookup.findStatic(Thunk.class, "lazy", MethodType.methodType(Lazy.class, Object.class));
+            UNWRAP = lookup.findStatic(JavaUtils.class, "unwrapThunk", MethodType.methodType(Object.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private FunctionHandles() {
+    }
+
+    /**
+     * The handle of a public static method with the given name and number of parameters, or null
+     * if the class has none.
+     */
+    static MethodHandle invoker(final Class<?> cls, final String methodName, final int arity)
+            throws IllegalAccessException {
+        final Method method = find(cls, methodName, arity);
+        if (method == null) {
+            return null;
+        }
+        MethodHandle handle = MethodHandles.publicLookup().unreflect(method);
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < arity; i++) {
+            if (parameterTypes[i] == Lazy.class) {
+                handle = MethodHandles.filterArguments(handle, i, LAZY);
+            }
+        }
+        handle = MethodHandles.filterReturnValue(handle.asType(MethodType.genericMethodType(arity)), UNWRAP);
+        return handle.asSpreader(Object[].class, arity);
+    }
+
+    private static Method find(final Class<?> cls, final String methodName, final int arity) {
+        for (final Method method : cls.getMethods()) {
+            if (method.getName().equals(methodName) && method.getParameterTypes().length == arity
+                && Modifier.isStatic(method.getModifiers())) {
+                return method;
+            }
+        }
+        return null;
+    }
+}
@@ -2,13 +2,37 @@ package frege.interpreter.javasupport;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * A generation of interpreter classes. Each compilation adds a child loader holding only the
+ * classes it generated; the classes of older generations are loaded by the parent generations,
+ * and a class redefined in a newer generation shadows the older one. Every generation also has a
+ * {@link ClassTable} of all the classes it sees, so that looking up class bytes does not walk the
+ * generations.
+ */
 public class InterpreterClassLoader extends URLClassLoader {
     private final Map<String, byte[]> classes;
+    private final ConcurrentMap<String, MethodHandle> fieldAccessors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, MethodHandle> functions = new ConcurrentHashMap<>();
+    private final ClassTable table;
+    private final ClassLoader host;
+    private final long ownBytes;
+    private final long totalBytes;
+    private final int generations;
+    private volatile String fingerprint;
+    private volatile boolean sandboxed;
 
     public InterpreterClassLoader() {
         this(Thread.currentThread().getContextClassLoader(), new HashMap<>());
@@ -26,6 +50,35 @@ public class InterpreterClassLoader extends URLClassLoader {
                                   final Map<String, byte[]> classFiles) {
         super(new URL[0], parent);
         this.classes = new HashMap<>(classFiles);
+        long bytes = 0;
+        for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            bytes += entry.getValue().length;
+        }
+        final InterpreterClassLoader parentGeneration = parentGeneration();
+        this.table = (parentGeneration == null ? ClassTable.EMPTY : parentGeneration.table).with(classes);
+        this.host = parentGeneration == null ? parent : parentGeneration.host;
+        this.ownBytes = bytes;
+        this.totalBytes = parentGeneration == null ? bytes : parentGeneration.totalBytes + bytes;
+        this.generations = parentGeneration == null ? 1 : parentGeneration.generations + 1;
+        this.sandboxed = parentGeneration != null && parentGeneration.sandboxed;
+    }
+
+    @Override
+    protected Class<?> loadClass(final String className, final boolean resolve)
+            throws ClassNotFoundException {
+        if (!classes.containsKey(className)) {
+            return super.loadClass(className, resolve);
+        }
+        synchronized (getClassLoadingLock(className)) {
+            Class<?> clazz = findLoadedClass(className);
+            if (clazz == null) {
+                clazz = findClass(className);
+            }
+            if (resolve) {
+                resolveClass(clazz);
+            }
+            return clazz;
+        }
     }
 
     @Override
@@ -57,7 +110,7 @@ public class InterpreterClassLoader extends URLClassLoader {
                 relativeName = noSuffix;
             }
             final String className = relativeName.replace('/', '.');
-            final byte[] bytecode = classes.get(className);
+            final byte[] bytecode = classBytes(className);
             if (bytecode != null) {
                 return new ByteArrayInputStream(bytecode);
             }
@@ -65,7 +118,206 @@ public class InterpreterClassLoader extends URLClassLoader {
         return null;
     }
 
+    /**
+     * The previous generation, or null for the first one.
+     */
+    public InterpreterClassLoader parentGeneration() {
+        final ClassLoader parent = getParent();
+        return parent instanceof InterpreterClassLoader ? (InterpreterClassLoader) parent : null;
+    }
+
+    /**
+     * Whether this is a given generation or a generation added on top of it.
+     */
+    public boolean descendsFrom(final InterpreterClassLoader ancestor) {
+        for (InterpreterClassLoader generation = this; generation != null && generation.generations >= ancestor.generations;
+             generation = generation.parentGeneration()) {
+            if (generation == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The class loader the interpreter runs in, the parent of the first generation.
+     */
+    public ClassLoader hostClassLoader() {
+        return host;
+    }
+
+    /**
+     * Restricts the code of this generation, of its parent generations and of the generations
+     * added on top of it, see {@link SandboxExecutor}.
+     */
+    public void sandbox() {
+        for (InterpreterClassLoader generation = this; generation != null && !generation.sandboxed;
+             generation = generation.parentGeneration()) {
+            SandboxExecutor.restrict(generation);
+            generation.sandboxed = true;
+        }
+    }
+
+    public boolean isSandboxed() {
+        return sandboxed;
+    }
+
+    /**
+     * The size of the class bytes of this generation.
+     */
+    public long ownBytes() {
+        return ownBytes;
+    }
+
+    /**
+     * The size of the class bytes held by this generation and its parent generations,
+     * including classes shadowed by newer generations.
+     */
+    public long totalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * The number of generations up to and including this one.
+     */
+    public int generations() {
+        return generations;
+    }
+
+    /**
+     * The classes defined by this generation only.
+     */
+    public Map<String, byte[]> ownClasses() {
+        return Collections.unmodifiableMap(classes);
+    }
+
+    /**
+     * The names of the classes seen by this loader in a package, and in its subpackages if {@code recurse} is set.
+     */
+    public List<String> classNames(final String packageName, final boolean recurse) {
+        final List<String> classNames = new ArrayList<>();
+        table.collect(packageName, recurse, classNames);
+        return classNames;
+    }
+
+    public byte[] classBytes(final String className) {
+        return table.get(className);
+    }
+
+    /**
+     * The classes generated for a Frege package: the package class and its nested classes.
+     */
+    public Map<String, byte[]> classesOf(final String packageName) {
+        return new HashMap<>(table.classesOf(packageName));
+    }
+
+    /**
+     * A handle of type {@code ()Object} that reads a public static field of a class seen by this
+     * loader. The field is looked up once; later calls return the same handle.
+     */
+    public MethodHandle fieldAccessor(final String className, final String fieldName)
+            throws ClassNotFoundException, NoSuchFieldException, IllegalAccessException {
+        final String key = className + '#' + fieldName;
+        final MethodHandle accessor = fieldAccessors.get(key);
+        if (accessor != null) {
+            return accessor;
+        }
+        final MethodHandle getter = MethodHandles.publicLookup()
+            .unreflectGetter(loadClass(className).getDeclaredField(fieldName))
+            .asType(MethodType.methodType(Object.class));
+        final MethodHandle existing = fieldAccessors.putIfAbsent(key, getter);
+        return existing == null ? getter : existing;
+    }
+
+    /**
+     * The handle kept by {@link #functionInvoker} under a key, or null.
+     */
+    public MethodHandle function(final String key) {
+        return functions.get(key);
+    }
+
+    /**
+     * A handle of type {@code (Object[])Object} that calls a top-level function compiled into a
+     * public static method of a class seen by this loader, kept under the given key. Null if the
+     * class has no such method.
+     */
+    public MethodHandle functionInvoker(final String key, final String className, final String methodName,
+                                        final int arity) {
+        final MethodHandle invoker = functions.get(key);
+        if (invoker != null) {
+            return invoker;
+        }
+        final MethodHandle resolved;
+        try {
+            resolved = FunctionHandles.invoker(loadClass(className), methodName, arity);
+        } catch (ClassNotFoundException | IllegalAccessException e) {
+            return null;
+        }
+        if (resolved == null) {
+            return null;
+        }
+        final MethodHandle existing = functions.putIfAbsent(key, resolved);
+        return existing == null ? resolved : existing;
+    }
+
+    /**
+     * A new generation on top of this one with the given classes.
+     */
+    public InterpreterClassLoader withClasses(final Map<String, byte[]> newClasses) {
+        return new InterpreterClassLoader(this, newClasses);
+    }
+
+    /**
+     * A new generation on top of this one with the classes another loader has for a Frege package,
+     * or this loader if it already has the same classes.
+     */
+    public InterpreterClassLoader withClassesOf(final InterpreterClassLoader other, final String packageName) {
+        final Map<String, byte[]> packageClasses = other.table.classesOf(packageName);
+        for (final Map.Entry<String, byte[]> entry : packageClasses.entrySet()) {
+            if (table.get(entry.getKey()) != entry.getValue()) {
+                return withClasses(packageClasses);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * A new generation on top of this one with the classes of the given Frege packages, so that
+     * they are loaded, and their top-level values evaluated, again. The other classes stay loaded.
+     */
+    public InterpreterClassLoader withReloaded(final String... packageNames) {
+        final Map<String, byte[]> reloaded = new HashMap<>();
+        for (final String packageName : packageNames) {
+            reloaded.putAll(table.classesOf(packageName));
+        }
+        return withClasses(reloaded);
+    }
+
+    /**
+     * A content hash of all the classes of this loader and its parent generations.
+     */
+    public String fingerprint() {
+        String result = fingerprint;
+        if (result == null) {
+            final List<String> classNames = new ArrayList<>(classes.keySet());
+            Collections.sort(classNames);
+            final String[] parts = new String[classNames.size() * 2 + 1];
+            final InterpreterClassLoader parent = parentGeneration();
+            parts[0] = parent == null ? "" : parent.fingerprint();
+            for (int i = 0; i < classNames.size(); i++) {
+                parts[2 * i + 1] = classNames.get(i);
+                parts[2 * i + 2] = ContentHash.ofClass(classes.get(classNames.get(i)));
+            }
+            result = ContentHash.of(parts);
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    /**
+     * All the classes visible through this loader, newer generations shadowing older ones.
+     */
     public Map<String, byte[]> classes() {
-        return new HashMap<>(classes);
+        return table.classes();
     }
-}
\ No newline at end of file
+}
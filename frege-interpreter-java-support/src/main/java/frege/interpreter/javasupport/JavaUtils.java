@@ -3,25 +3,47 @@ package frege.interpreter.javasupport;
 import frege.runtime.Runtime;
 
 import java.io.BufferedReader;
-import java.io.FilePermission;
 import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
-import java.security.Permission;
+import java.lang.invoke.MethodHandle;
 import java.util.concurrent.Callable;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 public class JavaUtils {
 
     public static Object fieldValue(final String className,
                                     final String variableName, final InterpreterClassLoader loader) {
-        final Class<?> clazz;
         try {
-            clazz = loader.loadClass(className);
-            return unwrapThunk(clazz.getDeclaredField(variableName).get(null));
-        } catch (Exception e) {
+            return fieldValue(loader.fieldAccessor(className, variableName));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The value of a field, read through a handle from {@link InterpreterClassLoader#fieldAccessor}.
+     */
+    public static Object fieldValue(final MethodHandle accessor) {
+        try {
+            return unwrapThunk((Object) accessor.invokeExact());
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The result of a function, called through a handle from {@link InterpreterClassLoader#functionInvoker}.
+     */
+    public static Object invoke(final MethodHandle invoker, final Object[] args) {
+        try {
+            return (Object) invoker.invokeExact(args);
+        } catch (Error | RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
             throw new RuntimeException(e);
         }
     }
@@ -42,12 +64,13 @@ public class JavaUtils {
                                            final StringWriter outWriter,
                                            final StringWriter errWriter,
                                            final InterpreterClassLoader loader) {
-        return sandbox(new FutureTask<>(new Callable<Object>() {
+        loader.sandbox();
+        return SandboxExecutor.shared().run(new Callable<Object>() {
             @Override
             public Object call() throws Exception {
                 return fieldValueWithRuntime(className, variableName, stdinStr, outWriter, errWriter, loader);
             }
-        }), 5, TimeUnit.SECONDS);
+        });
     }
 
     public static Object fieldValueWithRuntime(final String className,
@@ -60,6 +83,41 @@ public class JavaUtils {
         return fieldValue(className, variableName, loader);
     }
 
+    /**
+     * The value of a field, read on the {@link SandboxExecutor#shared() sandbox pool} with the standard
+     * streams of Frege code connected to the given streams.
+     */
+    public static Object sandboxFieldValue(final String className,
+                                           final String variableName,
+                                           final RuntimeStreams streams,
+                                           final InterpreterClassLoader loader) {
+        loader.sandbox();
+        return SandboxExecutor.shared().run(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return fieldValueWithRuntime(className, variableName, streams, loader);
+            }
+        });
+    }
+
+    public static Object fieldValueWithRuntime(final String className,
+                                               final String variableName,
+                                               final RuntimeStreams streams,
+                                               final InterpreterClassLoader loader) {
+        try {
+            return streams.call(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return fieldValue(className, variableName, loader);
+                }
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private static void prepareRuntime(final String stdinStr, final StringWriter outWriter, final StringWriter errWriter) {
         final BufferedReader stdin = new BufferedReader(new StringReader(stdinStr + "\n"));
         final PrintWriter stdout = new PrintWriter(outWriter);
@@ -69,48 +127,20 @@ public class JavaUtils {
         Runtime.stderr.set(stderr);
     }
 
+    /**
+     * Runs a task on the {@link SandboxExecutor#shared() sandbox pool}, waiting for at most the given time.
+     */
     public static <V> V sandbox(final FutureTask<V> task,
                                 final long timeout,
                                 final TimeUnit unit
     ) {
-
-        final Thread thread = new Thread(task);
-        final SecurityManager oldSecurityManager = System.getSecurityManager();
-        final AtomicBoolean isDisabled = new AtomicBoolean(false);
-        final SecurityManager securityManager = new SecurityManager() {
+        return SandboxExecutor.shared().run(new Callable<V>() {
             @Override
-            public void checkPermission(final Permission perm) {
-                if (!isDisabled.get()) {
-                    if (perm instanceof RuntimePermission) {
-                        final RuntimePermission runtimePerm = (RuntimePermission) perm;
-                        if (runtimePerm.getName().equals("accessDeclaredMembers")) {
-                            return;
-                        }
-                    } else if (perm instanceof FilePermission) {
-                        final FilePermission filePerm = (FilePermission) perm;
-                        final String fileName = filePerm.getName();
-                        if (filePerm.getActions().equals("read") &&
-                            (fileName.endsWith(".jar") || fileName.endsWith(".class"))) {
-                            return;
-                        }
-                    }
-                    super.checkPermission(perm);
-                }
+            public V call() throws Exception {
+                task.run();
+                return task.get();
             }
-        };
-        try {
-            System.setSecurityManager(securityManager);
-            thread.start();
-            return task.get(timeout, unit);
-        } catch (Exception e) {
-            isDisabled.set(true);
-            task.cancel(true);
-            thread.stop();
-            throw new RuntimeException(e);
-        } finally {
-            isDisabled.set(true);
-            System.setSecurityManager(oldSecurityManager);
-        }
+        }, timeout, unit);
     }
 
 }
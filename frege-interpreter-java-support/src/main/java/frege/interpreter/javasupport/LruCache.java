@@ -0,0 +1,150 @@
+package frege.interpreter.javasupport;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe least recently used cache, bounded by the total weight of its values.
+ */
+public class LruCache<K, V> {
+
+    public interface Weigher<V> {
+        long weigh(V value);
+    }
+
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxWeight;
+    private final Weigher<? super V> weigher;
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long evictedWeight;
+
+    public LruCache(final long maxEntries) {
+        this(maxEntries, new Weigher<V>() {
+            @Override
+            public long weigh(final V value) {
+                return 1;
+            }
+        });
+    }
+
+    public LruCache(final long maxWeight, final Weigher<? super V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    public synchronized V get(final K key) {
+        final Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Drops an entry the last lookup found to be stale, counting that lookup as a miss.
+     */
+    public synchronized void invalidate(final K key) {
+        final Entry<V> entry = entries.remove(key);
+        if (entry != null) {
+            hits--;
+            misses++;
+            weight -= entry.weight;
+        }
+    }
+
+    public synchronized void put(final K key, final V value) {
+        final long valueWeight = weigher.weigh(value);
+        final Entry<V> old = entries.put(key, new Entry<>(value, valueWeight));
+        if (old != null) {
+            weight -= old.weight;
+        }
+        weight += valueWeight;
+        final Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            final Entry<V> eldest = it.next().getValue();
+            it.remove();
+            weight -= eldest.weight;
+            evictions++;
+            evictedWeight += eldest.weight;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized Statistics statistics() {
+        return new Statistics(entries.size(), weight, hits, misses, evictions, evictedWeight);
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long weight;
+
+        private Entry(final V value, final long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    public static final class Statistics {
+        private final int size;
+        private final long weight;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long evictedWeight;
+
+        private Statistics(final int size, final long weight, final long hits, final long misses,
+                           final long evictions, final long evictedWeight) {
+            this.size = size;
+            this.weight = weight;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.evictedWeight = evictedWeight;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long weight() {
+            return weight;
+        }
+
+        public long hits() {
+            return hits;
+        }
+
+        public long misses() {
+            return misses;
+        }
+
+        public long evictions() {
+            return evictions;
+        }
+
+        public long evictedWeight() {
+            return evictedWeight;
+        }
+
+        public double hitRatio() {
+            final long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Statistics[size=%d, weight=%d, hits=%d, misses=%d, evictions=%d, evictedWeight=%d]",
+                size, weight, hits, misses, evictions, evictedWeight);
+        }
+    }
+}
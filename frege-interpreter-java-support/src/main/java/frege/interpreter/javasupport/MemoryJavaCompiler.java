@@ -1,47 +1,148 @@
 package frege.interpreter.javasupport;
 
+import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaCompiler.CompilationTask;
 import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
 import javax.tools.ToolProvider;
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Compiles Java sources in memory. The system Java compiler and its standard file managers are
+ * shared by all instances; only the in-memory overlay of a compilation is created per call.
+ */
 public class MemoryJavaCompiler {
+    private static final int MAX_IDLE_FILE_MANAGERS =
+        Integer.getInteger("frege.interpreter.javac.fileManagers", Runtime.getRuntime().availableProcessors());
+    private static final Queue<StandardJavaFileManager> fileManagers = new ConcurrentLinkedQueue<>();
+    private static final Map<ClassLoader, List<String>> classpathOptions =
+        Collections.synchronizedMap(new WeakHashMap<ClassLoader, List<String>>());
+    private static final AtomicLong compilations = new AtomicLong();
+    private static final AtomicLong compilationNanos = new AtomicLong();
+
     private final JavaCompiler compiler;
     private MemoryStoreManager fileManager;
     private final InterpreterClassLoader classLoader;
 
     public MemoryJavaCompiler(final InterpreterClassLoader classLoader) {
-        compiler = ToolProvider.getSystemJavaCompiler();
+        compiler = SystemCompiler.INSTANCE;
         if (compiler == null) {
             throw new IllegalStateException("Error: Java compiler not found. "
                 + "Java Compiler API, tools.jar should be available on classpath. "
                 + "Use the JVM that comes with the JDK, not JRE.");
         }
-        fileManager = new MemoryStoreManager(compiler.getStandardFileManager(null, null, null), classLoader);
         this.classLoader = classLoader;
     }
 
     public CompilationInfo compile(final Map<String, CharSequence> sources,
                                    final Iterable<String> options) {
-        final DiagnosticCollector<JavaFileObject> diagnostics =
-            new DiagnosticCollector<>();
-        final Iterable<? extends JavaFileObject> compilationUnits =
-            toSourceFiles(sources, fileManager);
-        final CompilationTask task = compiler.getTask(null, fileManager,
-            diagnostics, options, null, compilationUnits);
-        final boolean isSuccess = task.call();
-        return new CompilationInfo(isSuccess, diagnostics);
+        final long start = System.nanoTime();
+        final StandardJavaFileManager standardFileManager = borrowFileManager();
+        try {
+            fileManager = new MemoryStoreManager(standardFileManager, classLoader);
+            final DiagnosticCollector<JavaFileObject> diagnostics =
+                new DiagnosticCollector<>();
+            final Iterable<? extends JavaFileObject> compilationUnits =
+                toSourceFiles(sources, fileManager);
+            final CompilationTask task = compiler.getTask(null, fileManager,
+                diagnostics, options, null, compilationUnits);
+            final boolean isSuccess = task.call();
+            final long elapsed = System.nanoTime() - start;
+            compilations.incrementAndGet();
+            compilationNanos.addAndGet(elapsed);
+            return new CompilationInfo(isSuccess, diagnostics, elapsed);
+        } finally {
+            releaseFileManager(standardFileManager);
+        }
     }
 
     public CompilationInfo compile(final Map<String, CharSequence> sources) {
+        return compile(sources, options(classLoader.hostClassLoader()));
+    }
+
+    /**
+     * Compiles independent sources with as few javac runs as possible. All sources are compiled
+     * together; when some of them have errors, the others are compiled again without them.
+     * The class loader of this compiler then holds the classes of every source that compiled.
+     */
+    public BatchCompilationInfo compileBatch(final String[] sourceNames, final String[] sources) {
+        final Map<String, CharSequence> remaining = new LinkedHashMap<>();
+        for (int i = 0; i < sourceNames.length; i++) {
+            remaining.put(sourceNames[i], sources[i]);
+        }
+        final Map<String, CompilationInfo> results = new HashMap<>();
+        long elapsed = 0;
+        while (!remaining.isEmpty()) {
+            final CompilationInfo info = compile(remaining);
+            elapsed += info.elapsedNanos();
+            final Map<String, List<Diagnostic<? extends JavaFileObject>>> diagnostics = new HashMap<>();
+            final Set<String> failed = new HashSet<>();
+            for (final String sourceName : remaining.keySet()) {
+                diagnostics.put(sourceName, new ArrayList<Diagnostic<? extends JavaFileObject>>());
+            }
+            for (final Diagnostic<? extends JavaFileObject> diagnostic : info.diagnostics()) {
+                final String sourceName = diagnostic.getSource() == null ? null
+                    : MemoryStoreManager.sourceName(diagnostic.getSource());
+                final boolean isError = diagnostic.getKind() == Diagnostic.Kind.ERROR;
+                if (sourceName != null && diagnostics.containsKey(sourceName)) {
+                    diagnostics.get(sourceName).add(diagnostic);
+                    if (isError) {
+                        failed.add(sourceName);
+                    }
+                } else {
+                    for (final Map.Entry<String, List<Diagnostic<? extends JavaFileObject>>> entry
+                            : diagnostics.entrySet()) {
+                        entry.getValue().add(diagnostic);
+                        if (isError) {
+                            failed.add(entry.getKey());
+                        }
+                    }
+                }
+            }
+            if (info.isSuccess()) {
+                for (final String sourceName : remaining.keySet()) {
+                    results.put(sourceName, new CompilationInfo(true, diagnostics.get(sourceName), info.elapsedNanos()));
+                }
+                break;
+            }
+            if (failed.isEmpty()) {
+                failed.addAll(remaining.keySet());
+            }
+            for (final String sourceName : failed) {
+                results.put(sourceName, new CompilationInfo(false, diagnostics.get(sourceName), info.elapsedNanos()));
+                remaining.remove(sourceName);
+            }
+        }
+        return new BatchCompilationInfo(results, elapsed);
+    }
+
+    private static List<String> options(final ClassLoader host) {
+        List<String> options = classpathOptions.get(host);
+        if (options == null) {
+            options = Collections.unmodifiableList(createOptions(host));
+            classpathOptions.put(host, options);
+        }
+        return options;
+    }
+
+    private static List<String> createOptions(final ClassLoader host) {
         // TODO The version is hardcoded as the Frege compiler for Java 8 is still not available on Maven central
     	/*
     	 * Sorry, but I need a repl where I can just point to the latest compiler.
@@ -55,15 +156,44 @@ public class MemoryJavaCompiler {
         options.add("-target");
         options.add(version);
 
-        if (classLoader.getParent() instanceof URLClassLoader) {
-            URLClassLoader urlClassLoader = (URLClassLoader) classLoader.getParent();
+        if (host instanceof URLClassLoader) {
+            URLClassLoader urlClassLoader = (URLClassLoader) host;
             options.add("-classpath");
             StringBuilder sb = new StringBuilder();
             for (URL url : urlClassLoader.getURLs())
                 sb.append(url.getFile()).append(File.pathSeparator);
             options.add(sb.toString());
         }
-        return compile(sources, options);
+        return options;
+    }
+
+    /**
+     * The number of compilations in this process and the total time spent in javac.
+     */
+    public static long compilations() {
+        return compilations.get();
+    }
+
+    public static long compilationNanos() {
+        return compilationNanos.get();
+    }
+
+    private StandardJavaFileManager borrowFileManager() {
+        final StandardJavaFileManager standardFileManager = fileManagers.poll();
+        return standardFileManager != null ? standardFileManager
+            : compiler.getStandardFileManager(null, null, null);
+    }
+
+    private static void releaseFileManager(final StandardJavaFileManager standardFileManager) {
+        if (fileManagers.size() < MAX_IDLE_FILE_MANAGERS) {
+            fileManagers.offer(standardFileManager);
+        } else {
+            try {
+                standardFileManager.close();
+            } catch (IOException e) {
+                // nothing is written through the standard file manager
+            }
+        }
     }
 
     public CompilationInfo compile(
@@ -74,7 +204,7 @@ public class MemoryJavaCompiler {
     }
 
     public InterpreterClassLoader classLoader() {
-        return fileManager.getClassLoader();
+        return fileManager == null ? classLoader : fileManager.getClassLoader();
     }
 
     private Iterable<? extends JavaFileObject> toSourceFiles(
@@ -88,4 +218,8 @@ public class MemoryJavaCompiler {
         }
         return files;
     }
+
+    private static final class SystemCompiler {
+        private static final JavaCompiler INSTANCE = ToolProvider.getSystemJavaCompiler();
+    }
 }
\ No newline at end of file
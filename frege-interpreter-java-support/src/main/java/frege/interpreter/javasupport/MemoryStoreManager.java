@@ -19,6 +19,9 @@ import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -27,24 +30,28 @@ public final class MemoryStoreManager extends
 
 	private static final String JAVA_EXTENSION = ".java";
 	private final Map<String, MemoryJavaClass> byteCodeMap;
+	private final Map<String, MemoryJavaClass> sessionClasses;
 	private final Map<URI, JavaFileObject> sourceMap;
+	private final PackageIndex<String> outputIndex = new PackageIndex<>();
+	private final PackageIndex<URI> sourceIndex = new PackageIndex<>();
 	private final InterpreterClassLoader classLoader;
 
 	public MemoryStoreManager(final JavaFileManager fileManager,
 							  final InterpreterClassLoader classLoader) {
 		super(fileManager);
 		this.classLoader = classLoader;
-		this.byteCodeMap = toMemoryJavaClassMap(classLoader.classes());
+		this.byteCodeMap = new HashMap<>();
+		this.sessionClasses = new HashMap<>();
 		sourceMap = new HashMap<>();
 	}
 
-	private Map<String, MemoryJavaClass> toMemoryJavaClassMap(final Map<String, byte[]> byteCodeMap) {
-		Map<String, MemoryJavaClass> result = new HashMap<>();
-		for (Map.Entry<String, byte[]> classNameByteCode: byteCodeMap.entrySet())
-			result.put(classNameByteCode.getKey(),
-				new MemoryJavaClass(classNameByteCode.getKey(), classNameByteCode.getValue()));
-
-		return result;
+	private MemoryJavaClass sessionClass(final String className, final byte[] bytecode) {
+		MemoryJavaClass file = sessionClasses.get(className);
+		if (file == null) {
+			file = new MemoryJavaClass(className, bytecode);
+			sessionClasses.put(className, file);
+		}
+		return file;
 	}
 
 	@Override
@@ -66,15 +73,23 @@ public final class MemoryStoreManager extends
 		final ArrayList<JavaFileObject> files = new ArrayList<>();
 		if (location == StandardLocation.CLASS_PATH
 				&& kinds.contains(Kind.CLASS)) {
-			for (final JavaFileObject file : byteCodeMap.values()) {
-                if (file.getName().startsWith(packageName))
-					files.add(file);
+			final Set<String> seen = new HashSet<>();
+			final List<String> outputNames = new ArrayList<>();
+			outputIndex.collect(packageName, recurse, outputNames);
+			for (final String className : outputNames) {
+				if (seen.add(className))
+					files.add(byteCodeMap.get(className));
+			}
+			for (final String className : classLoader.classNames(packageName, recurse)) {
+				if (seen.add(className))
+					files.add(sessionClass(className, classLoader.classBytes(className)));
 			}
 		} else if (location == StandardLocation.SOURCE_PATH
 				&& kinds.contains(Kind.SOURCE)) {
-			for (final JavaFileObject file : sourceMap.values()) {
-				if (file.getName().startsWith(packageName))
-					files.add(file);
+			final Set<URI> uris = new LinkedHashSet<>();
+			sourceIndex.collect(packageName, recurse, uris);
+			for (final URI uri : uris) {
+				files.add(sourceMap.get(uri));
 			}
 		}
 		for (final JavaFileObject file : result) {
@@ -84,10 +99,12 @@ public final class MemoryStoreManager extends
 	}
 
 	private static class MemoryJavaSource extends SimpleJavaFileObject {
+		private final String sourceName;
 		private final String code;
 
 		private MemoryJavaSource(final String name, final String code) {
 			super(toURI(StandardLocation.SOURCE_PATH, name), Kind.SOURCE);
+			this.sourceName = name;
 			this.code = code;
 		}
 
@@ -115,7 +132,8 @@ public final class MemoryStoreManager extends
 
 		private MemoryJavaClass(final String name) {
             super(toURI(StandardLocation.CLASS_PATH, name), Kind.CLASS);
-            byteCodeMap.put(name, this);
+            if (byteCodeMap.put(name, this) == null)
+				outputIndex.add(PackageIndex.packageOf(name), name);
 			this.name = name;
 		}
 
@@ -164,13 +182,16 @@ public final class MemoryStoreManager extends
 	public void close() throws IOException {
 	}
 
+	/**
+	 * A new generation on top of the compiling class loader, holding the classes of this compilation.
+	 */
 	InterpreterClassLoader getClassLoader() {
 		Collection<MemoryJavaClass> bytecodes = byteCodeMap.values();
 		Map<String, byte[]> bytecodeMap = new HashMap<>();
         for (MemoryJavaClass memoryJavaClass: bytecodes) {
             bytecodeMap.put(memoryJavaClass.getName(), memoryJavaClass.getByteCode());
         }
-		return new InterpreterClassLoader(classLoader.getParent(), bytecodeMap);
+		return classLoader.withClasses(bytecodeMap);
 	}
 
 	@Override
@@ -193,12 +214,20 @@ public final class MemoryStoreManager extends
 	public void putFileForInput(final Location location,
 			final String packageName, final String relativeName,
 			final JavaFileObject file) {
-		sourceMap.put(toURI(location, packageName, relativeName), file);
+		putSource(toURI(location, packageName, relativeName), packageName, file);
 	}
 
 	public void putFileForInput(final String javaFilePath,
 			final JavaFileObject file) {
-		sourceMap.put(toURI(StandardLocation.SOURCE_PATH, javaFilePath), file);
+		final String className = javaFilePath.endsWith(JAVA_EXTENSION)
+			? javaFilePath.substring(0, javaFilePath.length() - JAVA_EXTENSION.length()) : javaFilePath;
+		putSource(toURI(StandardLocation.SOURCE_PATH, javaFilePath),
+			PackageIndex.packageOf(className.replace('/', '.').replace('\\', '.')), file);
+	}
+
+	private void putSource(final URI uri, final String packageName, final JavaFileObject file) {
+		if (sourceMap.put(uri, file) == null)
+			sourceIndex.add(packageName, uri);
 	}
 
 	@Override
@@ -218,6 +247,13 @@ public final class MemoryStoreManager extends
 		return new MemoryJavaSource(name, code);
 	}
 
+	/**
+	 * The name a source was made with by {@link #makeStringSource}, or null for other files.
+	 */
+	static String sourceName(final JavaFileObject file) {
+		return file instanceof MemoryJavaSource ? ((MemoryJavaSource) file).sourceName : null;
+	}
+
     private URI toURI(final Location location, final String packageName, final String relativeName) {
         String name = packageName + "." + relativeName;
         return toURI(location, name);
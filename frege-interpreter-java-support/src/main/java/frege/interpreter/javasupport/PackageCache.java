@@ -0,0 +1,51 @@
+package frege.interpreter.javasupport;
+
+/**
+ * Process-wide cache of imported package symbol tables, shared by all interpreters.
+ *
+ * There is one entry for every package of the host class path, the libraries and the interpreter
+ * itself: the symbol tables the compiler built when it imported the package, together with those of
+ * the packages it needs. Entries are looked up by the host class loader and the package name, so
+ * they do not depend on the scripts of any session. Packages compiled in an interpreter session
+ * are never cached; the compiler imports them from the session's classes.
+ */
+public final class PackageCache {
+
+    private static final int DEFAULT_SIZE = 64;
+
+    private static final LruCache<String, Object> cache =
+        new LruCache<>(Long.getLong("frege.interpreter.packageCache.size", DEFAULT_SIZE));
+
+    private PackageCache() {
+    }
+
+    public static Object get(final ClassLoader loader, final String packageName) {
+        return isHostPackage(loader, packageName) ? cache.get(key(loader, packageName)) : null;
+    }
+
+    public static void put(final ClassLoader loader, final String packageName, final Object packages) {
+        if (isHostPackage(loader, packageName)) {
+            cache.put(key(loader, packageName), packages);
+        }
+    }
+
+    /**
+     * Whether a package comes from the host class path rather than from a session.
+     */
+    public static boolean isHostPackage(final ClassLoader loader, final String packageName) {
+        return !(loader instanceof InterpreterClassLoader)
+            || ((InterpreterClassLoader) loader).classBytes(packageName) == null;
+    }
+
+    public static LruCache.Statistics statistics() {
+        return cache.statistics();
+    }
+
+    public static void clear() {
+        cache.clear();
+    }
+
+    private static String key(final ClassLoader loader, final String packageName) {
+        return ClassLoaderIds.hostId(loader) + ":" + packageName;
+    }
+}
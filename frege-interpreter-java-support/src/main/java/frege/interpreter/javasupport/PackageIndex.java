@@ -0,0 +1,47 @@
+package frege.interpreter.javasupport;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Values grouped by Java package, for listing a package without scanning everything.
+ */
+final class PackageIndex<T> {
+
+    private final TreeMap<String, List<T>> packages = new TreeMap<>();
+
+    void add(final String packageName, final T value) {
+        List<T> values = packages.get(packageName);
+        if (values == null) {
+            values = new ArrayList<>();
+            packages.put(packageName, values);
+        }
+        values.add(value);
+    }
+
+    /**
+     * Adds the values of a package, and of its subpackages if {@code recurse} is set.
+     */
+    void collect(final String packageName, final boolean recurse, final Collection<? super T> result) {
+        final List<T> values = packages.get(packageName);
+        if (values != null) {
+            result.addAll(values);
+        }
+        if (recurse) {
+            final Map<String, List<T>> subpackages = packageName.isEmpty()
+                ? packages.tailMap(packageName, false)
+                : packages.subMap(packageName + ".", packageName + "/");
+            for (final List<T> subpackageValues : subpackages.values()) {
+                result.addAll(subpackageValues);
+            }
+        }
+    }
+
+    static String packageOf(final String className) {
+        final int lastDot = className.lastIndexOf('.');
+        return lastDot < 0 ? "" : className.substring(0, lastDot);
+    }
+}
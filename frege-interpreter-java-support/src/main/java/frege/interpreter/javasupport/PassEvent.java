@@ -0,0 +1,51 @@
+package frege.interpreter.javasupport;
+
+/**
+ * A completed compiler pass: how long it took, how much the thread allocated while it ran, and
+ * what it counted, for example {@code ("tokens", 42)} for the lexer.
+ */
+public final class PassEvent {
+    private final String pass;
+    private final long wallNanos;
+    private final long allocatedBytes;
+    private final String unit;
+    private final int count;
+
+    PassEvent(final String pass, final long wallNanos, final long allocatedBytes, final String unit,
+              final int count) {
+        this.pass = pass;
+        this.wallNanos = wallNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.unit = unit;
+        this.count = count;
+    }
+
+    public String pass() {
+        return pass;
+    }
+
+    public long wallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * The bytes allocated by the thread during the pass, or -1 if the JVM does not measure it.
+     */
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public String unit() {
+        return unit;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PassEvent[pass=%s, wallNanos=%d, allocatedBytes=%d, %s=%d]",
+            pass, wallNanos, allocatedBytes, unit, count);
+    }
+}
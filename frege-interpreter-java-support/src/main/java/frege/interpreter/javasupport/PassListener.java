@@ -0,0 +1,8 @@
+package frege.interpreter.javasupport;
+
+/**
+ * Notified of every compiler pass run on behalf of a {@link PassMetrics}, on the thread that ran it.
+ */
+public interface PassListener {
+    void passCompleted(PassEvent event);
+}
@@ -0,0 +1,200 @@
+package frege.interpreter.javasupport;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Histograms of the wall time, allocated bytes and counts of the compiler passes, per pass.
+ *
+ * Every pass is recorded in the {@link #global() process-wide metrics}, which are registered as the
+ * MBean {@code frege.interpreter:type=PassMetrics}, and in the metrics the running thread has
+ * {@link #enter(PassMetrics) entered}, such as those of a script engine, which notify their listeners.
+ */
+public final class PassMetrics implements PassMetricsMXBean {
+
+    private static final int BUCKETS = 64;
+    private static final ThreadLocal<PassMetrics> current = new ThreadLocal<>();
+    private static final PassMetrics global = new PassMetrics();
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final boolean allocationMeasured = allocationMeasured();
+
+    static {
+        try {
+            global.register(new ObjectName("frege.interpreter:type=PassMetrics"));
+        } catch (JMException | SecurityException e) {
+            // the metrics are still recorded, they are just not visible through JMX
+        }
+    }
+
+    private final Map<String, Histogram> histograms = new TreeMap<>();
+    private final List<PassListener> listeners = new CopyOnWriteArrayList<>();
+
+    public static PassMetrics global() {
+        return global;
+    }
+
+    /**
+     * Makes the passes run by this thread count for the given metrics, until {@link #exit(PassMetrics)}
+     * is called with the result.
+     */
+    public static PassMetrics enter(final PassMetrics metrics) {
+        final PassMetrics previous = current.get();
+        current.set(metrics);
+        return previous;
+    }
+
+    public static void exit(final PassMetrics previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+
+    static PassMetrics current() {
+        return current.get();
+    }
+
+    public static Timer start(final String pass) {
+        return new Timer(pass);
+    }
+
+    public void addListener(final PassListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(final PassListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void register(final ObjectName name) throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, name);
+        } catch (InstanceAlreadyExistsException e) {
+            server.unregisterMBean(name);
+            server.registerMBean(this, name);
+        }
+    }
+
+    public void unregister(final ObjectName name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+
+    @Override
+    public synchronized List<PassSummary> getPasses() {
+        final List<PassSummary> passes = new ArrayList<>(histograms.size());
+        for (final Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            passes.add(entry.getValue().summary(entry.getKey()));
+        }
+        return passes;
+    }
+
+    @Override
+    public synchronized void reset() {
+        histograms.clear();
+    }
+
+    private void record(final PassEvent event) {
+        synchronized (this) {
+            Histogram histogram = histograms.get(event.pass());
+            if (histogram == null) {
+                histogram = new Histogram();
+                histograms.put(event.pass(), histogram);
+            }
+            histogram.add(event);
+        }
+        for (final PassListener listener : listeners) {
+            listener.passCompleted(event);
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (!allocationMeasured) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static boolean allocationMeasured() {
+        try {
+            return threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled();
+        } catch (LinkageError | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A pass that is running.
+     */
+    public static final class Timer {
+        private final String pass;
+        private final long startNanos;
+        private final long startBytes;
+
+        private Timer(final String pass) {
+            this.pass = pass;
+            this.startBytes = allocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        public void finish(final String unit, final int count) {
+            final long wallNanos = System.nanoTime() - startNanos;
+            final long bytes = startBytes < 0 ? -1 : allocatedBytes() - startBytes;
+            final PassEvent event = new PassEvent(pass, wallNanos, bytes, unit, count);
+            global.record(event);
+            final PassMetrics metrics = current.get();
+            if (metrics != null && metrics != global) {
+                metrics.record(event);
+            }
+        }
+    }
+
+    private static final class Histogram {
+        private final long[] buckets = new long[BUCKETS];
+        private long runs;
+        private long totalNanos;
+        private long maxNanos;
+        private long allocatedBytes;
+        private long count;
+
+        private void add(final PassEvent event) {
+            buckets[BUCKETS - 1 - Long.numberOfLeadingZeros(Math.max(event.wallNanos(), 1))]++;
+            runs++;
+            totalNanos += event.wallNanos();
+            maxNanos = Math.max(maxNanos, event.wallNanos());
+            if (event.allocatedBytes() > 0) {
+                allocatedBytes += event.allocatedBytes();
+            }
+            count += event.count();
+        }
+
+        private long percentile(final double fraction) {
+            final long wanted = (long) Math.ceil(runs * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= wanted) {
+                    return Math.min(i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1, maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        private PassSummary summary(final String pass) {
+            return new PassSummary(pass, runs, totalNanos, maxNanos, percentile(0.5), percentile(0.99),
+                allocatedBytes, count);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package frege.interpreter.javasupport;
+
+import java.util.List;
+
+public interface PassMetricsMXBean {
+
+    List<PassSummary> getPasses();
+
+    void reset();
+}
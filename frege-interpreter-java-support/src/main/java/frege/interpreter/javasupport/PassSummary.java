@@ -0,0 +1,75 @@
+package frege.interpreter.javasupport;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The recorded runs of one compiler pass. Percentiles are upper bounds of power of two buckets.
+ */
+public final class PassSummary {
+    private final String pass;
+    private final long runs;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long allocatedBytes;
+    private final long count;
+
+    @ConstructorProperties({"pass", "runs", "totalNanos", "maxNanos", "p50Nanos", "p99Nanos",
+        "allocatedBytes", "count"})
+    public PassSummary(final String pass, final long runs, final long totalNanos, final long maxNanos,
+                       final long p50Nanos, final long p99Nanos, final long allocatedBytes, final long count) {
+        this.pass = pass;
+        this.runs = runs;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.allocatedBytes = allocatedBytes;
+        this.count = count;
+    }
+
+    public String getPass() {
+        return pass;
+    }
+
+    public long getRuns() {
+        return runs;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /**
+     * The bytes allocated by all runs, as far as the JVM measures them.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * The sum of what the runs counted, such as tokens or definitions.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PassSummary[pass=%s, runs=%d, totalNanos=%d, maxNanos=%d, p50Nanos=%d, p99Nanos=%d, allocatedBytes=%d, count=%d]",
+            pass, runs, totalNanos, maxNanos, p50Nanos, p99Nanos, allocatedBytes, count);
+    }
+}
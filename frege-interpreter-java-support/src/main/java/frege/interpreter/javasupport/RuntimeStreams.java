@@ -0,0 +1,93 @@
+package frege.interpreter.javasupport;
+
+import frege.runtime.Runtime;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+
+/**
+ * Connects the standard streams of Frege code to a reader and writers of the caller while a task runs.
+ *
+ * Input and output go through buffers of {@code frege.interpreter.io.bufferSize} characters, so
+ * memory use does not depend on how much a script reads or writes. Output is flushed with every
+ * line and when the task ends, so callers see it while the script is still running. A missing
+ * reader or writer leaves the stream of the thread as it is; the streams the thread had before
+ * are restored afterwards.
+ */
+public final class RuntimeStreams {
+
+    private static final int BUFFER_SIZE = Integer.getInteger("frege.interpreter.io.bufferSize", 8192);
+
+    private final Reader in;
+    private final Writer out;
+    private final Writer err;
+    private final BufferedReader stdin;
+    private final PrintWriter stdout;
+    private final PrintWriter stderr;
+
+    public RuntimeStreams(final Reader in, final Writer out, final Writer err) {
+        this.in = in;
+        this.out = out;
+        this.err = err;
+        this.stdin = in == null || in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, BUFFER_SIZE);
+        this.stdout = printWriter(out);
+        this.stderr = printWriter(err);
+    }
+
+    public static RuntimeStreams of(final ReadableByteChannel in,
+                                    final WritableByteChannel out,
+                                    final WritableByteChannel err,
+                                    final Charset charset) {
+        return new RuntimeStreams(
+            Channels.newReader(in, charset.newDecoder(), BUFFER_SIZE),
+            Channels.newWriter(out, charset.newEncoder(), BUFFER_SIZE),
+            Channels.newWriter(err, charset.newEncoder(), BUFFER_SIZE));
+    }
+
+    private static PrintWriter printWriter(final Writer writer) {
+        return writer == null ? null : new PrintWriter(new BufferedWriter(writer, BUFFER_SIZE), true);
+    }
+
+    /**
+     * Whether these streams read from and write to the given reader and writers.
+     */
+    public boolean connects(final Reader in, final Writer out, final Writer err) {
+        return this.in == in && this.out == out && this.err == err;
+    }
+
+    public <V> V call(final Callable<V> task) throws Exception {
+        final BufferedReader previousIn = Runtime.stdin.get();
+        final PrintWriter previousOut = Runtime.stdout.get();
+        final PrintWriter previousErr = Runtime.stderr.get();
+        if (stdin != null) {
+            Runtime.stdin.set(stdin);
+        }
+        if (stdout != null) {
+            Runtime.stdout.set(stdout);
+        }
+        if (stderr != null) {
+            Runtime.stderr.set(stderr);
+        }
+        try {
+            return task.call();
+        } finally {
+            if (stdout != null) {
+                stdout.flush();
+            }
+            if (stderr != null) {
+                stderr.flush();
+            }
+            Runtime.stdin.set(previousIn);
+            Runtime.stdout.set(previousOut);
+            Runtime.stderr.set(previousErr);
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package frege.interpreter.javasupport;
+
+import java.io.FilePermission;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.Permission;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of worker threads for sandboxed evaluation.
+ *
+ * A security manager is installed only while there is sandboxed code: while a sandboxed task runs,
+ * while a thread started from one runs, and while a {@link InterpreterClassLoader#sandbox() sandboxed}
+ * interpreter session can still be used. It is removed again when a task ends and there is none of
+ * these left. It restricts a thread that runs a sandboxed task, any thread started from one, and any
+ * thread that runs code of a sandboxed session; every other check goes to the security manager that
+ * was installed before, if any. The stack of a thread is only inspected for session code while
+ * there are sandboxed sessions. A pool cannot be created on a JVM that does not allow installing a
+ * security manager, unless {@code frege.interpreter.sandbox.permissionChecks} is set to {@code false}.
+ *
+ * A task that times out is cancelled by interrupting its worker. A worker that keeps running its
+ * task anyway is replaced by a new one until the task ends.
+ */
+public final class SandboxExecutor {
+
+    private static final boolean permissionChecksRequired =
+        Boolean.parseBoolean(System.getProperty("frege.interpreter.sandbox.permissionChecks", "true"));
+
+    private static final InheritableThreadLocal<Boolean> sandboxed = new InheritableThreadLocal<>();
+    private static final ThreadLocal<Boolean> inspecting = new ThreadLocal<>();
+    private static final ThreadGroup spawned = new ThreadGroup("frege-sandbox-spawned");
+
+    private static final Set<Reference<InterpreterClassLoader>> sessions = new HashSet<>();
+    private static final ReferenceQueue<InterpreterClassLoader> collectedSessions = new ReferenceQueue<>();
+    private static volatile boolean hasSandboxedSessions;
+    private static SandboxSecurityManager installed;
+    private static int runningTasks;
+
+    private static volatile SandboxExecutor shared;
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+    private final boolean permissionChecks;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicInteger stuckWorkers = new AtomicInteger();
+    private final Set<SandboxedTask<?>> pending = Collections.newSetFromMap(new ConcurrentHashMap<SandboxedTask<?>, Boolean>());
+    private boolean shutdown;
+
+    public SandboxExecutor(final int threads, final int queueSize, final long timeoutMillis) {
+        this.permissionChecks = canInstallSecurityManager();
+        this.timeoutMillis = timeoutMillis;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(queueSize), new WorkerFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * The pool used by the interpreter, configured with the system properties
+     * {@code frege.interpreter.sandbox.threads}, {@code frege.interpreter.sandbox.queueSize}
+     * and {@code frege.interpreter.sandbox.timeoutMillis}.
+     */
+    public static SandboxExecutor shared() {
+        if (shared == null) {
+            synchronized (SandboxExecutor.class) {
+                if (shared == null) {
+                    shared = new SandboxExecutor(
+                        Integer.getInteger("frege.interpreter.sandbox.threads",
+                            java.lang.Runtime.getRuntime().availableProcessors()),
+                        Integer.getInteger("frege.interpreter.sandbox.queueSize", 64),
+                        Long.getLong("frege.interpreter.sandbox.timeoutMillis", 5000));
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Whether tasks of this pool run with permission checks; only false if they were switched off.
+     */
+    public boolean hasPermissionChecks() {
+        return permissionChecks;
+    }
+
+    public <V> V run(final Callable<V> task) {
+        return run(task, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public <V> V run(final Callable<V> task, final long timeout, final TimeUnit unit) {
+        final SandboxedTask<V> sandboxedTask = new SandboxedTask<>(task);
+        final Future<V> future;
+        try {
+            future = executor.submit(sandboxedTask);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            sandboxedTask.finish();
+            throw e;
+        }
+        try {
+            return future.get(timeout, unit);
+        } catch (TimeoutException e) {
+            timedOut.incrementAndGet();
+            future.cancel(true);
+            sandboxedTask.abandon();
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            sandboxedTask.abandon();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops the workers. Tasks that have not started are dropped.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+        }
+        executor.shutdownNow();
+        for (final SandboxedTask<?> task : pending) {
+            task.drop();
+        }
+    }
+
+    /**
+     * Restricts the code of a sandboxed interpreter generation, for as long as the generation is
+     * reachable.
+     */
+    static void restrict(final InterpreterClassLoader loader) {
+        if (!permissionChecksRequired) {
+            return;
+        }
+        synchronized (SandboxExecutor.class) {
+            expungeSessions();
+            sessions.add(new WeakReference<>(loader, collectedSessions));
+            hasSandboxedSessions = true;
+            installSecurityManager();
+        }
+    }
+
+    public Statistics statistics() {
+        return new Statistics(executor.getQueue().size(), executor.getActiveCount(),
+            executor.getCompletedTaskCount(), rejected.get(), timedOut.get(), stuckWorkers.get());
+    }
+
+    /**
+     * Whether the security manager can be installed, found by installing it if it is not; false if
+     * permission checks are switched off.
+     */
+    private static synchronized boolean canInstallSecurityManager() {
+        if (!permissionChecksRequired) {
+            return false;
+        }
+        if (installed == null) {
+            installSecurityManager();
+            uninstallIfIdle();
+        }
+        return true;
+    }
+
+    private static synchronized void taskStarted() {
+        runningTasks++;
+        installSecurityManager();
+    }
+
+    private static synchronized void taskEnded() {
+        runningTasks--;
+        uninstallIfIdle();
+    }
+
+    private static void installSecurityManager() {
+        if (installed != null) {
+            return;
+        }
+        final SandboxSecurityManager manager = new SandboxSecurityManager(System.getSecurityManager());
+        try {
+            System.setSecurityManager(manager);
+        } catch (UnsupportedOperationException | SecurityException e) {
+            throw new IllegalStateException("Cannot install the sandbox security manager; allow it with "
+                + "-Djava.security.manager=allow, or set frege.interpreter.sandbox.permissionChecks=false "
+                + "to run sandboxed code without permission checks", e);
+        }
+        installed = manager;
+    }
+
+    private static void uninstallIfIdle() {
+        expungeSessions();
+        if (installed != null && runningTasks == 0 && sessions.isEmpty() && spawned.activeCount() == 0) {
+            if (System.getSecurityManager() == installed) {
+                System.setSecurityManager(installed.previous);
+            }
+            installed = null;
+        }
+    }
+
+    private static void expungeSessions() {
+        for (Reference<?> collected = collectedSessions.poll(); collected != null; collected = collectedSessions.poll()) {
+            sessions.remove(collected);
+        }
+        hasSandboxedSessions = !sessions.isEmpty();
+    }
+
+    /**
+     * Whether the current thread is restricted: it runs a sandboxed task, was started from a thread
+     * that did, or has code of a sandboxed interpreter session on its stack.
+     */
+    private static boolean isSandboxed(final SandboxSecurityManager manager) {
+        if (sandboxed.get() != null) {
+            return true;
+        }
+        if (!hasSandboxedSessions || inspecting.get() != null) {
+            // the class loaders of the stack are being looked up, which is checked as well
+            return false;
+        }
+        inspecting.set(Boolean.TRUE);
+        try {
+            for (final Class<?> cls : manager.classContext()) {
+                final ClassLoader loader = cls.getClassLoader();
+                if (loader instanceof InterpreterClassLoader && ((InterpreterClassLoader) loader).isSandboxed()) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            inspecting.remove();
+        }
+    }
+
+    private void growPool() {
+        synchronized (executor) {
+            executor.setMaximumPoolSize(executor.getMaximumPoolSize() + 1);
+            executor.setCorePoolSize(executor.getCorePoolSize() + 1);
+        }
+        stuckWorkers.incrementAndGet();
+    }
+
+    private void shrinkPool() {
+        stuckWorkers.decrementAndGet();
+        synchronized (executor) {
+            executor.setCorePoolSize(executor.getCorePoolSize() - 1);
+            executor.setMaximumPoolSize(executor.getMaximumPoolSize() - 1);
+        }
+    }
+
+    /**
+     * A task that marks its worker as sandboxed, and keeps the security manager installed from when
+     * it is submitted until it ends or is dropped. A task abandoned while it runs adds a worker to
+     * the pool, which it takes away again when it ends.
+     */
+    private final class SandboxedTask<V> implements Callable<V> {
+        private static final int NEW = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int ABANDONED = 3;
+
+        private final Callable<V> task;
+        private final AtomicInteger state = new AtomicInteger(NEW);
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private SandboxedTask(final Callable<V> task) {
+            this.task = task;
+            if (permissionChecks) {
+                taskStarted();
+            }
+            pending.add(this);
+        }
+
+        @Override
+        public V call() throws Exception {
+            if (!state.compareAndSet(NEW, RUNNING)) {
+                throw new CancellationException();
+            }
+            sandboxed.set(Boolean.TRUE);
+            try {
+                return task.call();
+            } finally {
+                sandboxed.remove();
+                if (!state.compareAndSet(RUNNING, DONE)) {
+                    shrinkPool();
+                }
+                finish();
+            }
+        }
+
+        private void abandon() {
+            if (state.compareAndSet(RUNNING, ABANDONED)) {
+                growPool();
+            } else {
+                drop();
+            }
+        }
+
+        /**
+         * Makes sure a task that has not started never runs.
+         */
+        private void drop() {
+            if (state.compareAndSet(NEW, ABANDONED)) {
+                finish();
+            }
+        }
+
+        private void finish() {
+            if (finished.compareAndSet(false, true)) {
+                pending.remove(this);
+                if (permissionChecks) {
+                    taskEnded();
+                }
+            }
+        }
+    }
+
+    private static final class SandboxSecurityManager extends SecurityManager {
+        private final SecurityManager previous;
+
+        private SandboxSecurityManager(final SecurityManager previous) {
+            this.previous = previous;
+        }
+
+        private Class<?>[] classContext() {
+            return getClassContext();
+        }
+
+        /**
+         * Threads started from sandboxed threads go to a group of their own, so that the security
+         * manager stays installed while any of them runs.
+         */
+        @Override
+        public ThreadGroup getThreadGroup() {
+            return sandboxed.get() != null ? spawned : super.getThreadGroup();
+        }
+
+        @Override
+        public void checkPermission(final Permission perm) {
+            if (!isSandboxed(this)) {
+                if (previous != null) {
+                    previous.checkPermission(perm);
+                }
+                return;
+            }
+            if (perm instanceof RuntimePermission) {
+                if (perm.getName().equals("accessDeclaredMembers")) {
+                    return;
+                }
+            } else if (perm instanceof FilePermission) {
+                final String fileName = perm.getName();
+                if (perm.getActions().equals("read") &&
+                    (fileName.endsWith(".jar") || fileName.endsWith(".class"))) {
+                    return;
+                }
+            }
+            super.checkPermission(perm);
+        }
+
+        @Override
+        public void checkPermission(final Permission perm, final Object context) {
+            if (!isSandboxed(this)) {
+                if (previous != null) {
+                    previous.checkPermission(perm, context);
+                }
+                return;
+            }
+            super.checkPermission(perm, context);
+        }
+    }
+
+    private static final class WorkerFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "frege-sandbox-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    public static final class Statistics {
+        private final int queueDepth;
+        private final int activeWorkers;
+        private final long completed;
+        private final long rejected;
+        private final long timedOut;
+        private final int stuckWorkers;
+
+        private Statistics(final int queueDepth, final int activeWorkers, final long completed,
+                           final long rejected, final long timedOut, final int stuckWorkers) {
+            this.queueDepth = queueDepth;
+            this.activeWorkers = activeWorkers;
+            this.completed = completed;
+            this.rejected = rejected;
+            this.timedOut = timedOut;
+            this.stuckWorkers = stuckWorkers;
+        }
+
+        public int queueDepth() {
+            return queueDepth;
+        }
+
+        public int activeWorkers() {
+            return activeWorkers;
+        }
+
+        public long completed() {
+            return completed;
+        }
+
+        public long rejected() {
+            return rejected;
+        }
+
+        public long timedOut() {
+            return timedOut;
+        }
+
+        /**
+         * Workers still running a task that timed out; the pool has a replacement for each.
+         */
+        public int stuckWorkers() {
+            return stuckWorkers;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Statistics[queueDepth=%d, activeWorkers=%d, completed=%d, rejected=%d, timedOut=%d, "
+                + "stuckWorkers=%d]", queueDepth, activeWorkers, completed, rejected, timedOut, stuckWorkers);
+        }
+    }
+}
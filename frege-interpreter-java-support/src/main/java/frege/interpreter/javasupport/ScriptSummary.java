@@ -0,0 +1,70 @@
+package frege.interpreter.javasupport;
+
+/**
+ * What a session needs to know about a compiled script, without the compiler state it was compiled
+ * in: the kind of the script, its module, the names it defines, and the field holding its value.
+ */
+public final class ScriptSummary {
+
+    private final int sourceType;
+    private final String moduleName;
+    private final String[] names;
+    private final String valueClass;
+    private final String valueField;
+
+    public ScriptSummary(final int sourceType,
+                         final String moduleName,
+                         final String[] names,
+                         final String valueClass,
+                         final String valueField) {
+        this.sourceType = sourceType;
+        this.moduleName = moduleName;
+        this.names = names.clone();
+        this.valueClass = valueClass;
+        this.valueField = valueField;
+    }
+
+    /**
+     * The ordinal of the kind of the script, as in {@link SourceTypeCache}.
+     */
+    public int sourceType() {
+        return sourceType;
+    }
+
+    public String moduleName() {
+        return moduleName;
+    }
+
+    /**
+     * The names a definitions script binds, as import items.
+     */
+    public String[] names() {
+        return names.clone();
+    }
+
+    /**
+     * The class of the field holding the value of an expression, or null.
+     */
+    public String valueClass() {
+        return valueClass;
+    }
+
+    public String valueField() {
+        return valueField;
+    }
+
+    /**
+     * An estimate of the heap taken by this summary, in bytes.
+     */
+    long weight() {
+        long chars = moduleName.length() + length(valueClass) + length(valueField);
+        for (final String name : names) {
+            chars += name.length();
+        }
+        return 2 * chars + 16L * (names.length + 4);
+    }
+
+    private static int length(final String s) {
+        return s == null ? 0 : s.length();
+    }
+}
@@ -0,0 +1,333 @@
+package frege.interpreter.javasupport;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the classes of an interpreter session within bounds.
+ *
+ * A session is compacted when its loader has more than {@code frege.interpreter.session.maxGenerations}
+ * generations (default 64), or when it holds more than {@code frege.interpreter.session.maxBytes} bytes
+ * of classes (default 64 MB) and half of that was added since it was last compacted. Compacting a session
+ * <ol>
+ * <li>merges its generations into one that holds only the newest bytes of every class, so that
+ * shadowed versions of a module, like the console modules of earlier scripts, are dropped
+ * together with their loaders;</li>
+ * <li>drops the console modules, which no later script refers to, so that the console module of the
+ * last expression does not keep the definitions it uses;</li>
+ * <li>drops the definition modules whose names have all been redefined and that no kept class refers to;</li>
+ * <li>while the session is still over half its byte limit, evicts the oldest definition module that
+ * no kept class refers to, and its names with it.</li>
+ * </ol>
+ * A compacted session has one generation and, if enough modules could be evicted, half the bytes it
+ * may hold, so that it is not compacted again before it has grown as much. The names of evicted
+ * definitions are reported by {@link Compaction#evicted()}; the script engine writes them to the
+ * error writer of the script context.
+ *
+ * All classes of a compacted session are loaded again when they are next used, so top-level values
+ * are evaluated again.
+ */
+public final class SessionMemory {
+
+    private static final String CONSOLE_MODULE_PREFIX = "frege.interpreter.Console";
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final int DEFAULT_MAX_GENERATIONS = 64;
+
+    private static final long maxBytes = Long.getLong("frege.interpreter.session.maxBytes", DEFAULT_MAX_BYTES);
+    private static final int maxGenerations =
+        Integer.getInteger("frege.interpreter.session.maxGenerations", DEFAULT_MAX_GENERATIONS);
+
+    private static final AtomicLong compactions = new AtomicLong();
+    private static final AtomicLong classesDropped = new AtomicLong();
+    private static final AtomicLong bytesReclaimed = new AtomicLong();
+    private static final AtomicLong modulesEvicted = new AtomicLong();
+
+    private SessionMemory() {
+    }
+
+    public static boolean exceedsLimits(final InterpreterClassLoader loader) {
+        return exceedsLimits(loader, maxGenerations, maxBytes);
+    }
+
+    static boolean exceedsLimits(final InterpreterClassLoader loader, final int maxGenerations, final long maxBytes) {
+        return loader.generations() > maxGenerations
+            || loader.totalBytes() > maxBytes && loader.totalBytes() - firstGeneration(loader).ownBytes() > maxBytes / 2;
+    }
+
+    /**
+     * The compacted session if it is over its limits, otherwise null.
+     */
+    public static Compaction bound(final InterpreterClassLoader loader, final DefinitionStore definitions) {
+        return bound(loader, definitions, maxGenerations, maxBytes);
+    }
+
+    static Compaction bound(final InterpreterClassLoader loader, final DefinitionStore definitions,
+                            final int maxGenerations, final long maxBytes) {
+        return exceedsLimits(loader, maxGenerations, maxBytes) ? compact(loader, definitions, maxBytes) : null;
+    }
+
+    /**
+     * A loader merged into one generation if it has too many generations. Without the definitions
+     * of the session, no module can be dropped, so the byte limit is not applied.
+     */
+    public static InterpreterClassLoader bound(final InterpreterClassLoader loader) {
+        return loader.generations() > maxGenerations ? compact(loader, null).classLoader() : loader;
+    }
+
+    public static Compaction compact(final InterpreterClassLoader loader, final DefinitionStore definitions) {
+        return compact(loader, definitions, maxBytes);
+    }
+
+    static Compaction compact(final InterpreterClassLoader loader, final DefinitionStore definitions,
+                              final long maxBytes) {
+        final Map<String, byte[]> classes = loader.classes();
+        final Map<String, Map<String, byte[]>> modules = new HashMap<>();
+        for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            final String module = moduleOf(entry.getKey());
+            Map<String, byte[]> moduleClasses = modules.get(module);
+            if (moduleClasses == null) {
+                moduleClasses = new HashMap<>();
+                modules.put(module, moduleClasses);
+            }
+            moduleClasses.put(entry.getKey(), entry.getValue());
+        }
+
+        DefinitionStore store = definitions;
+        final Set<String> kept = new HashSet<>(modules.keySet());
+        if (store != null) {
+            final Map<String, Set<String>> references = references(modules);
+            final List<String> consoleModules = new ArrayList<>();
+            for (final String module : modules.keySet()) {
+                if (module.startsWith(CONSOLE_MODULE_PREFIX)) {
+                    consoleModules.add(module);
+                }
+            }
+            kept.removeAll(consoleModules);
+            for (final String module : consoleModules) {
+                if (isReferenced(module, kept, references)) {
+                    kept.add(module);
+                }
+            }
+            for (final String module : store.modules()) {
+                if (!store.isVisible(module) && !isReferenced(module, kept, references)) {
+                    kept.remove(module);
+                    store = store.without(module);
+                }
+            }
+            long keptBytes = bytes(modules, kept);
+            for (final String module : new ArrayList<>(store.modules())) {
+                if (keptBytes <= maxBytes / 2) {
+                    break;
+                }
+                if (kept.contains(module) && !isReferenced(module, kept, references)) {
+                    kept.remove(module);
+                    store = store.without(module);
+                    keptBytes -= bytes(modules.get(module));
+                    modulesEvicted.incrementAndGet();
+                }
+            }
+        }
+
+        final Map<String, byte[]> keptClasses = new HashMap<>();
+        for (final String module : kept) {
+            keptClasses.putAll(modules.get(module));
+        }
+        final InterpreterClassLoader compacted = new InterpreterClassLoader(loader.hostClassLoader(), keptClasses);
+        compactions.incrementAndGet();
+        classesDropped.addAndGet(countClasses(loader) - keptClasses.size());
+        bytesReclaimed.addAndGet(loader.totalBytes() - compacted.totalBytes());
+        final List<String> evicted = definitions == null
+            ? Collections.<String>emptyList() : Arrays.asList(definitions.droppedNames(store));
+        return new Compaction(compacted, store, evicted);
+    }
+
+    public static Statistics statistics() {
+        return new Statistics(compactions.get(), classesDropped.get(), bytesReclaimed.get(), modulesEvicted.get());
+    }
+
+    private static InterpreterClassLoader firstGeneration(final InterpreterClassLoader loader) {
+        InterpreterClassLoader generation = loader;
+        while (generation.parentGeneration() != null) {
+            generation = generation.parentGeneration();
+        }
+        return generation;
+    }
+
+    private static String moduleOf(final String className) {
+        final int nested = className.indexOf('$');
+        return nested < 0 ? className : className.substring(0, nested);
+    }
+
+    private static boolean isReferenced(final String module, final Set<String> kept,
+                                        final Map<String, Set<String>> references) {
+        for (final String other : kept) {
+            if (!other.equals(module) && references.get(other).contains(module)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The modules every module refers to, by the class names and descriptors in its constant pools.
+     */
+    private static Map<String, Set<String>> references(final Map<String, Map<String, byte[]>> modules) {
+        final Map<String, Set<String>> references = new HashMap<>();
+        for (final Map.Entry<String, Map<String, byte[]>> module : modules.entrySet()) {
+            final Set<String> referenced = new HashSet<>();
+            for (final byte[] bytecode : module.getValue().values()) {
+                for (final String constant : utf8Constants(bytecode)) {
+                    for (final String part : constant.split("[^\\w$/.]+")) {
+                        final String name = moduleOf(part.replace('/', '.'));
+                        if (modules.containsKey(name)) {
+                            referenced.add(name);
+                        } else if (name.startsWith("L") && modules.containsKey(name.substring(1))) {
+                            referenced.add(name.substring(1));
+                        }
+                    }
+                }
+            }
+            references.put(module.getKey(), referenced);
+        }
+        return references;
+    }
+
+    private static List<String> utf8Constants(final byte[] bytecode) {
+        final List<String> constants = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytecode))) {
+            in.skipBytes(8);
+            final int count = in.readUnsignedShort();
+            for (int i = 1; i < count; i++) {
+                final int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1:
+                        constants.add(in.readUTF());
+                        break;
+                    case 5:
+                    case 6:
+                        in.skipBytes(8);
+                        i++;
+                        break;
+                    case 7:
+                    case 8:
+                    case 16:
+                    case 19:
+                    case 20:
+                        in.skipBytes(2);
+                        break;
+                    case 15:
+                        in.skipBytes(3);
+                        break;
+                    default:
+                        in.skipBytes(4);
+                }
+            }
+        } catch (IOException e) {
+            // a truncated class: the constants read so far are all there is
+        }
+        return constants;
+    }
+
+    private static long bytes(final Map<String, Map<String, byte[]>> modules, final Set<String> kept) {
+        long total = 0;
+        for (final String module : kept) {
+            total += bytes(modules.get(module));
+        }
+        return total;
+    }
+
+    private static long bytes(final Map<String, byte[]> classes) {
+        long total = 0;
+        for (final byte[] bytecode : classes.values()) {
+            total += bytecode.length;
+        }
+        return total;
+    }
+
+    private static long countClasses(final InterpreterClassLoader loader) {
+        long count = 0;
+        for (InterpreterClassLoader generation = loader; generation != null;
+             generation = generation.parentGeneration()) {
+            count += generation.ownClasses().size();
+        }
+        return count;
+    }
+
+    public static final class Compaction {
+        private final InterpreterClassLoader classLoader;
+        private final DefinitionStore definitions;
+        private final List<String> evicted;
+
+        private Compaction(final InterpreterClassLoader classLoader, final DefinitionStore definitions,
+                           final List<String> evicted) {
+            this.classLoader = classLoader;
+            this.definitions = definitions;
+            this.evicted = evicted;
+        }
+
+        public InterpreterClassLoader classLoader() {
+            return classLoader;
+        }
+
+        public DefinitionStore definitions() {
+            return definitions;
+        }
+
+        /**
+         * The names that are no longer defined because their modules were evicted, sorted.
+         */
+        public List<String> evicted() {
+            return Collections.unmodifiableList(evicted);
+        }
+    }
+
+    public static final class Statistics {
+        private final long compactions;
+        private final long classesDropped;
+        private final long bytesReclaimed;
+        private final long modulesEvicted;
+
+        private Statistics(final long compactions, final long classesDropped, final long bytesReclaimed,
+                           final long modulesEvicted) {
+            this.compactions = compactions;
+            this.classesDropped = classesDropped;
+            this.bytesReclaimed = bytesReclaimed;
+            this.modulesEvicted = modulesEvicted;
+        }
+
+        public long compactions() {
+            return compactions;
+        }
+
+        public long classesDropped() {
+            return classesDropped;
+        }
+
+        public long bytesReclaimed() {
+            return bytesReclaimed;
+        }
+
+        /**
+         * Definition modules dropped with their names to stay within the byte limit.
+         */
+        public long modulesEvicted() {
+            return modulesEvicted;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Statistics[compactions=%d, classesDropped=%d, bytesReclaimed=%d, modulesEvicted=%d]",
+                compactions, classesDropped, bytesReclaimed, modulesEvicted);
+        }
+    }
+}
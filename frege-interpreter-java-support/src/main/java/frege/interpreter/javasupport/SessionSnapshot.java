@@ -0,0 +1,249 @@
+package frege.interpreter.javasupport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The state of an interpreter session in a file, so that it can be restored without compiling
+ * anything: the class bytes of the session, its definition table, its predefs and compiler flags,
+ * the scripting prelude and the signature of the bindings compiled into it.
+ *
+ * The file starts with a magic number, the format version and the compiler version, followed by
+ * the deflated state and a CRC32 of everything before it. A file of another format or compiler
+ * version, or one that does not match its checksum, is rejected. Files are written to a temporary
+ * file first and moved into place, so a crash never leaves a partial snapshot behind.
+ */
+public final class SessionSnapshot {
+
+    private static final int FILE_MAGIC = 0x46524753; // FRGS
+    private static final int FORMAT_VERSION = 1;
+
+    private final Map<String, byte[]> classes;
+    private final DefinitionStore definitions;
+    private final String predefs;
+    private final int[] compilerFlags;
+    private final boolean useSandbox;
+    private final String preludeScript;
+    private final String bindingSignature;
+
+    public SessionSnapshot(final InterpreterClassLoader classLoader,
+                           final DefinitionStore definitions,
+                           final String predefs,
+                           final int[] compilerFlags,
+                           final boolean useSandbox,
+                           final String preludeScript,
+                           final String bindingSignature) {
+        this(classLoader.classes(), definitions, predefs, compilerFlags, useSandbox, preludeScript, bindingSignature);
+    }
+
+    private SessionSnapshot(final Map<String, byte[]> classes,
+                            final DefinitionStore definitions,
+                            final String predefs,
+                            final int[] compilerFlags,
+                            final boolean useSandbox,
+                            final String preludeScript,
+                            final String bindingSignature) {
+        this.classes = Collections.unmodifiableMap(classes);
+        this.definitions = definitions;
+        this.predefs = predefs;
+        this.compilerFlags = compilerFlags.clone();
+        this.useSandbox = useSandbox;
+        this.preludeScript = preludeScript;
+        this.bindingSignature = bindingSignature;
+    }
+
+    /**
+     * A loader of the classes of the session, as one generation.
+     */
+    public InterpreterClassLoader classLoader() {
+        return new InterpreterClassLoader(classes);
+    }
+
+    public Map<String, byte[]> classes() {
+        return classes;
+    }
+
+    public DefinitionStore definitions() {
+        return definitions;
+    }
+
+    public String predefs() {
+        return predefs;
+    }
+
+    /**
+     * The ordinals of the compiler flags that are set.
+     */
+    public int[] compilerFlags() {
+        return compilerFlags.clone();
+    }
+
+    public boolean useSandbox() {
+        return useSandbox;
+    }
+
+    public String preludeScript() {
+        return preludeScript;
+    }
+
+    public String bindingSignature() {
+        return bindingSignature;
+    }
+
+    public void write(final Path path) throws IOException {
+        final ByteArrayOutputStream fileBytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(fileBytes);
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(DiskBytecodeStore.defaultCompilerVersion());
+        final DeflaterOutputStream deflater = new DeflaterOutputStream(out);
+        writeState(new DataOutputStream(deflater));
+        deflater.finish();
+        out.flush();
+        final CRC32 crc = new CRC32();
+        crc.update(fileBytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        final Path absolute = path.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        final Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, fileBytes.toByteArray());
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    public static SessionSnapshot read(final Path path) throws IOException {
+        final byte[] fileBytes = Files.readAllBytes(path);
+        if (fileBytes.length < 16) {
+            throw new IOException("Not a session snapshot: " + path);
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(fileBytes, 0, fileBytes.length - 8);
+        if (crc.getValue() != ByteBuffer.wrap(fileBytes, fileBytes.length - 8, 8).getLong()) {
+            throw new IOException("Corrupt session snapshot: " + path);
+        }
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(fileBytes, 0, fileBytes.length - 8));
+        if (in.readInt() != FILE_MAGIC) {
+            throw new IOException("Not a session snapshot: " + path);
+        }
+        final int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported session snapshot version " + version + ": " + path);
+        }
+        final String compilerVersion = in.readUTF();
+        if (!compilerVersion.equals(DiskBytecodeStore.defaultCompilerVersion())) {
+            throw new IOException("Session snapshot of compiler " + compilerVersion + ", not "
+                + DiskBytecodeStore.defaultCompilerVersion() + ": " + path);
+        }
+        return readState(new DataInputStream(new InflaterInputStream(in)));
+    }
+
+    private void writeState(final DataOutputStream out) throws IOException {
+        out.writeInt(classes.size());
+        for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().length);
+            out.write(entry.getValue());
+        }
+        out.writeInt(definitions.generation());
+        final List<String> modules = definitions.modules();
+        out.writeInt(modules.size());
+        for (final String module : modules) {
+            out.writeUTF(module);
+            final String[] names = definitions.names(module);
+            out.writeInt(names.length);
+            for (final String name : names) {
+                out.writeUTF(name);
+            }
+        }
+        final Map<String, String> owners = definitions.owners();
+        out.writeInt(owners.size());
+        for (final Map.Entry<String, String> entry : owners.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+        writeString(out, predefs);
+        out.writeInt(compilerFlags.length);
+        for (final int flag : compilerFlags) {
+            out.writeInt(flag);
+        }
+        out.writeBoolean(useSandbox);
+        writeString(out, preludeScript);
+        writeString(out, bindingSignature);
+        out.flush();
+    }
+
+    private static SessionSnapshot readState(final DataInputStream in) throws IOException {
+        final int classCount = in.readInt();
+        final Map<String, byte[]> classes = new HashMap<>(classCount * 2);
+        for (int i = 0; i < classCount; i++) {
+            final String className = in.readUTF();
+            final byte[] bytecode = new byte[in.readInt()];
+            in.readFully(bytecode);
+            classes.put(className, bytecode);
+        }
+        final int generation = in.readInt();
+        final int moduleCount = in.readInt();
+        final List<String> modules = new ArrayList<>(moduleCount);
+        final Map<String, String[]> namesByModule = new HashMap<>();
+        for (int i = 0; i < moduleCount; i++) {
+            final String module = in.readUTF();
+            final String[] names = new String[in.readInt()];
+            for (int j = 0; j < names.length; j++) {
+                names[j] = in.readUTF();
+            }
+            modules.add(module);
+            namesByModule.put(module, names);
+        }
+        final int ownerCount = in.readInt();
+        final Map<String, String> owners = new HashMap<>(ownerCount * 2);
+        for (int i = 0; i < ownerCount; i++) {
+            owners.put(in.readUTF(), in.readUTF());
+        }
+        final String predefs = readString(in);
+        final int[] compilerFlags = new int[in.readInt()];
+        for (int i = 0; i < compilerFlags.length; i++) {
+            compilerFlags[i] = in.readInt();
+        }
+        final boolean useSandbox = in.readBoolean();
+        final String preludeScript = readString(in);
+        final String bindingSignature = readString(in);
+        return new SessionSnapshot(classes, DefinitionStore.restore(generation, modules, namesByModule, owners),
+            predefs, compilerFlags, useSandbox, preludeScript, bindingSignature);
+    }
+
+    /**
+     * Predefs and prelude scripts can be longer than {@link DataOutputStream#writeUTF(String)} allows.
+     */
+    private static void writeString(final DataOutputStream out, final String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,36 @@
+package frege.interpreter.javasupport;
+
+/**
+ * Process-wide cache of the kind of a script (module, definitions or expression), keyed by a hash
+ * of the script, so that scripts evaluated again are not lexed and parsed just to classify them.
+ */
+public final class SourceTypeCache {
+
+    private static final int DEFAULT_SIZE = 1024;
+
+    private static final LruCache<String, Integer> cache =
+        new LruCache<>(Long.getLong("frege.interpreter.sourceTypeCache.size", DEFAULT_SIZE));
+
+    private SourceTypeCache() {
+    }
+
+    /**
+     * The ordinal of the kind of the script, or -1 if it is not known.
+     */
+    public static int get(final String source) {
+        final Integer sourceType = cache.get(ContentHash.of(source));
+        return sourceType == null ? -1 : sourceType;
+    }
+
+    public static void put(final String source, final int sourceType) {
+        cache.put(ContentHash.of(source), sourceType);
+    }
+
+    public static LruCache.Statistics statistics() {
+        return cache.statistics();
+    }
+
+    public static void clear() {
+        cache.clear();
+    }
+}
@@ -0,0 +1,70 @@
+package frege.interpreter.javasupport;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ClassTableTest {
+
+    @Test
+    public void testLevelsLogarithmicInPackages() {
+        ClassTable table = ClassTable.EMPTY;
+        for (int i = 0; i < 1024; i++) {
+            table = table.with(classes("p.M" + i, "m" + i));
+            assertTrue(table.levels() + " levels for " + (i + 1) + " packages",
+                table.levels() <= 1 + 32 - Integer.numberOfLeadingZeros(i + 1));
+        }
+        assertEquals(1024, table.size());
+        assertArrayEquals(bytes("m0"), table.get("p.M0"));
+        assertArrayEquals(bytes("m1023"), table.get("p.M1023"));
+    }
+
+    @Test
+    public void testNewerLevelShadowsOlder() {
+        ClassTable table = ClassTable.EMPTY.with(classes("p.A", "a1", "p.A$B", "b1"));
+        table = table.with(classes("p.C", "c"));
+        table = table.with(classes("p.A", "a2"));
+
+        assertArrayEquals(bytes("a2"), table.get("p.A"));
+        assertArrayEquals(bytes("b1"), table.get("p.A$B"));
+        assertNull(table.get("p.A$D"));
+        assertEquals(3, table.size());
+        assertEquals(3, table.classes().size());
+        assertEquals(Arrays.asList("p.A", "p.A$B", "p.C"), sorted(collect(table, "p")));
+        assertEquals(2, table.classesOf("p.A").size());
+    }
+
+    private static List<String> collect(final ClassTable table, final String javaPackage) {
+        final List<String> names = new ArrayList<>();
+        table.collect(javaPackage, true, names);
+        return names;
+    }
+
+    private static List<String> sorted(final List<String> names) {
+        Collections.sort(names);
+        return names;
+    }
+
+    private static Map<String, byte[]> classes(final String... namesAndContents) {
+        final Map<String, byte[]> classes = new HashMap<>();
+        for (int i = 0; i < namesAndContents.length; i += 2) {
+            classes.put(namesAndContents[i], bytes(namesAndContents[i + 1]));
+        }
+        return classes;
+    }
+
+    private static byte[] bytes(final String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,36 @@
+package frege.interpreter.javasupport;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ContentHashTest {
+
+    @Test
+    public void testSha256OfBytes() {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+            ContentHash.of("abc".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testPartsAreStable() {
+        assertEquals(ContentHash.of("main = 1", "module Foo", "-O"), ContentHash.of("main = 1", "module Foo", "-O"));
+        assertEquals(64, ContentHash.of("main = 1").length());
+    }
+
+    @Test
+    public void testPartsAreDelimited() {
+        assertFalse(ContentHash.of("ab", "c").equals(ContentHash.of("a", "bc")));
+        assertFalse(ContentHash.of("abc").equals(ContentHash.of("abc", "")));
+    }
+
+    @Test
+    public void testClassHashIsTheHashOfItsBytes() {
+        final byte[] bytecode = {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 52};
+        assertEquals(ContentHash.of(bytecode), ContentHash.ofClass(bytecode));
+        assertEquals(ContentHash.of(bytecode), ContentHash.ofClass(bytecode.clone()));
+    }
+}
@@ -0,0 +1,217 @@
+package frege.interpreter.javasupport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskBytecodeStoreTest {
+
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void beforeTest() throws IOException {
+        directory = Files.createTempDirectory("bytecode-store");
+        file = directory.resolve("classes.bin");
+    }
+
+    @After
+    public void afterTest() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final DiskBytecodeStore store = new DiskBytecodeStore(file, "1");
+        store.put("a", "A", classes("A", "a"));
+        store.close();
+
+        final DiskBytecodeStore reopened = new DiskBytecodeStore(file, "1");
+        final DiskBytecodeStore.Record record = reopened.get("a");
+        assertNotNull(record);
+        assertEquals("A", record.descriptor());
+        assertArrayEquals(bytes("a"), record.classes().get("A"));
+        reopened.close();
+    }
+
+    @Test
+    public void testOtherCompilerVersion() throws IOException {
+        final DiskBytecodeStore store = new DiskBytecodeStore(file, "1");
+        store.put("a", "A", classes("A", "a"));
+        store.close();
+
+        final DiskBytecodeStore other = new DiskBytecodeStore(file, "2");
+        assertNull(other.get("a"));
+        other.close();
+    }
+
+    @Test
+    public void testTruncatedTail() throws IOException {
+        final DiskBytecodeStore store = new DiskBytecodeStore(file, "1");
+        store.put("a", "A", classes("A", "a"));
+        final long sizeAfterFirst = store.size();
+        store.put("b", "B", classes("B", "b"));
+        store.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        final DiskBytecodeStore reopened = new DiskBytecodeStore(file, "1");
+        assertNotNull(reopened.get("a"));
+        assertNull(reopened.get("b"));
+        assertEquals(sizeAfterFirst, reopened.size());
+        assertEquals(sizeAfterFirst, Files.size(file));
+        reopened.put("c", "C", classes("C", "c"));
+        assertNotNull(reopened.get("c"));
+        reopened.close();
+    }
+
+    @Test
+    public void testCorruptRecord() throws IOException {
+        final DiskBytecodeStore store = new DiskBytecodeStore(file, "1");
+        store.put("a", "A", classes("A", "a"));
+        final long sizeAfterFirst = store.size();
+        store.put("b", "B", classes("B", "b"));
+        store.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(raf.length() - 10);
+            raf.write(raf.read() ^ 0xff);
+        }
+
+        final DiskBytecodeStore reopened = new DiskBytecodeStore(file, "1");
+        assertNotNull(reopened.get("a"));
+        assertNull(reopened.get("b"));
+        assertEquals(sizeAfterFirst, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void testNotAStore() throws IOException {
+        Files.write(file, bytes("not a bytecode store"));
+
+        final DiskBytecodeStore store = new DiskBytecodeStore(file, "1");
+        assertEquals(0, store.entries());
+        store.put("a", "A", classes("A", "a"));
+        assertNotNull(store.get("a"));
+        store.close();
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        final DiskBytecodeStore store = new DiskBytecodeStore(file, "1");
+        store.put("a", "A", classes("A", "old"));
+        store.put("a", "A", classes("A", "new"));
+        store.put("b", "B", classes("B", "b"));
+        assertTrue(store.liveBytes() < store.size() - 8);
+
+        store.compact();
+        assertEquals(store.liveBytes() + 8, store.size());
+        assertEquals(store.size(), Files.size(file));
+        assertArrayEquals(bytes("new"), store.get("a").classes().get("A"));
+        assertArrayEquals(bytes("b"), store.get("b").classes().get("B"));
+        store.close();
+
+        final DiskBytecodeStore reopened = new DiskBytecodeStore(file, "1");
+        assertEquals(2, reopened.entries());
+        assertArrayEquals(bytes("new"), reopened.get("a").classes().get("A"));
+        reopened.close();
+    }
+
+    @Test
+    public void testNoCompactionOnOpen() throws IOException {
+        final DiskBytecodeStore store = new DiskBytecodeStore(file, "1");
+        store.put("a", "A", classes("A", "old"));
+        store.put("a", "A", classes("A", "new"));
+        final long size = store.size();
+        store.close();
+
+        final DiskBytecodeStore reopened = new DiskBytecodeStore(file, "1");
+        assertEquals(size, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void testAppendsOfTwoStores() throws IOException {
+        final DiskBytecodeStore first = new DiskBytecodeStore(file, "1");
+        final DiskBytecodeStore second = new DiskBytecodeStore(file, "1");
+        first.put("a", "A", classes("A", "a"));
+        second.put("b", "B", classes("B", "b"));
+        first.put("c", "C", classes("C", "c"));
+
+        assertNotNull(first.get("b"));
+        final DiskBytecodeStore third = new DiskBytecodeStore(file, "1");
+        assertEquals(3, third.entries());
+        assertArrayEquals(bytes("a"), third.get("a").classes().get("A"));
+        assertArrayEquals(bytes("b"), third.get("b").classes().get("B"));
+        assertArrayEquals(bytes("c"), third.get("c").classes().get("C"));
+        first.close();
+        second.close();
+        third.close();
+    }
+
+    @Test
+    public void testCompactionByAnotherStore() throws IOException {
+        final DiskBytecodeStore first = new DiskBytecodeStore(file, "1");
+        final DiskBytecodeStore second = new DiskBytecodeStore(file, "1");
+        first.put("a", "A", classes("A", "old"));
+        first.put("a", "A", classes("A", "new"));
+
+        first.compact();
+        assertNull(second.get("a"));
+        second.put("b", "B", classes("B", "b"));
+        assertArrayEquals(bytes("new"), second.get("a").classes().get("A"));
+        assertEquals(second.size(), Files.size(file));
+
+        final DiskBytecodeStore third = new DiskBytecodeStore(file, "1");
+        assertEquals(2, third.entries());
+        assertArrayEquals(bytes("b"), third.get("b").classes().get("B"));
+        first.close();
+        second.close();
+        third.close();
+    }
+
+    @Test
+    public void testReadDuringCompaction() throws IOException {
+        final DiskBytecodeStore store = new DiskBytecodeStore(file, "1");
+        for (int i = 0; i < 100; i++) {
+            store.put("k" + i, "K", classes("K", "v" + i));
+        }
+        final DiskBytecodeStore other = new DiskBytecodeStore(file, "1");
+        for (int i = 0; i < 100; i++) {
+            store.put("k" + i, "K", classes("K", "w" + i));
+        }
+        other.compact();
+
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(bytes("w" + i), store.get("k" + i).classes().get("K"));
+        }
+        store.close();
+        other.close();
+    }
+
+    private static Map<String, byte[]> classes(final String className, final String content) {
+        return Collections.singletonMap(className, bytes(content));
+    }
+
+    private static byte[] bytes(final String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
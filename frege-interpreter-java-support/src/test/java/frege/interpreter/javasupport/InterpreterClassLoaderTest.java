@@ -0,0 +1,139 @@
+package frege.interpreter.javasupport;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InterpreterClassLoaderTest {
+
+    @Test
+    public void testNewerGenerationShadowsOlder() {
+        final InterpreterClassLoader first = new InterpreterClassLoader(classes("p.A", "a1", "p.A$B", "b1"));
+        final InterpreterClassLoader second = first.withClasses(classes("p.A", "a2"));
+
+        assertArrayEquals(bytes("a2"), second.classBytes("p.A"));
+        assertArrayEquals(bytes("b1"), second.classBytes("p.A$B"));
+        assertArrayEquals(bytes("a1"), first.classBytes("p.A"));
+        assertNull(second.classBytes("p.C"));
+    }
+
+    @Test
+    public void testClassesOf() {
+        final InterpreterClassLoader first = new InterpreterClassLoader(classes("p.A", "a1", "p.A$B", "b1", "p.AB", "x"));
+        final InterpreterClassLoader second = first.withClasses(classes("p.A$C", "c2"));
+
+        final Map<String, byte[]> classes = second.classesOf("p.A");
+        assertEquals(3, classes.size());
+        assertArrayEquals(bytes("c2"), classes.get("p.A$C"));
+        assertEquals(2, first.classesOf("p.A").size());
+    }
+
+    @Test
+    public void testClassNames() {
+        final InterpreterClassLoader first = new InterpreterClassLoader(classes("p.A", "a", "p.q.B", "b", "r.C", "c"));
+        final InterpreterClassLoader second = first.withClasses(classes("p.D", "d", "p.D$E", "e"));
+
+        assertEquals(Arrays.asList("p.A", "p.D", "p.D$E"), sorted(second.classNames("p", false)));
+        assertEquals(Arrays.asList("p.A", "p.D", "p.D$E", "p.q.B"), sorted(second.classNames("p", true)));
+        assertEquals(Collections.singletonList("p.A"), sorted(first.classNames("p", false)));
+        assertEquals(Collections.singletonList("r.C"), sorted(second.classNames("r", true)));
+    }
+
+    @Test
+    public void testClasses() {
+        final InterpreterClassLoader first = new InterpreterClassLoader(classes("p.A", "a1", "p.B", "b"));
+        final InterpreterClassLoader second = first.withClasses(classes("p.A", "a2"));
+
+        final Map<String, byte[]> classes = second.classes();
+        assertEquals(2, classes.size());
+        assertArrayEquals(bytes("a2"), classes.get("p.A"));
+    }
+
+    @Test
+    public void testWithReloaded() {
+        final InterpreterClassLoader first = new InterpreterClassLoader(classes("p.A", "a1", "p.A$C", "c", "p.B", "b"));
+        final InterpreterClassLoader second = first.withClasses(classes("p.A", "a2"));
+        second.sandbox();
+
+        final InterpreterClassLoader reloaded = second.withReloaded("p.A");
+        assertEquals(3, reloaded.generations());
+        assertTrue(reloaded.isSandboxed());
+        assertEquals(2, reloaded.ownClasses().size());
+        assertArrayEquals(bytes("a2"), reloaded.ownClasses().get("p.A"));
+        assertArrayEquals(bytes("b"), reloaded.classBytes("p.B"));
+    }
+
+    @Test
+    public void testClassesOfAnotherGeneration() {
+        final InterpreterClassLoader base = new InterpreterClassLoader(classes("p.A", "a"));
+        final InterpreterClassLoader compiled = base.withClasses(classes("p.B", "b", "p.B$C", "c"));
+        final InterpreterClassLoader current = base.withClasses(classes("p.D", "d"));
+
+        assertTrue(current.descendsFrom(base));
+        assertFalse(base.descendsFrom(current));
+        assertFalse(current.descendsFrom(compiled));
+
+        final InterpreterClassLoader rebased = current.withClassesOf(compiled, "p.B");
+        assertEquals(3, rebased.generations());
+        assertArrayEquals(bytes("c"), rebased.classBytes("p.B$C"));
+        assertArrayEquals(bytes("d"), rebased.classBytes("p.D"));
+        assertTrue(rebased.withClassesOf(compiled, "p.B") == rebased);
+    }
+
+    @Test
+    public void testLookupCostIndependentOfGenerations() {
+        final InterpreterClassLoader first = new InterpreterClassLoader(classes("p.M0", "m0", "p.M0$N", "n0"));
+        InterpreterClassLoader last = first;
+        for (int i = 1; i < 2000; i++) {
+            last = last.withClasses(classes("p.M" + i, "m" + i, "p.M" + i + "$N", "n" + i));
+        }
+        assertEquals(2000, last.generations());
+
+        lookups(first);
+        lookups(last);
+        final long shallow = lookups(first);
+        final long deep = lookups(last);
+        assertTrue("lookups took " + deep + " ns after 2000 generations, " + shallow + " ns after one",
+            deep < 20 * shallow + 50_000_000L);
+    }
+
+    private static long lookups(final InterpreterClassLoader loader) {
+        final long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < 20_000; i++) {
+            found += loader.classBytes("p.M0$N").length;
+            found += loader.classesOf("p.M0").size();
+            found += loader.classBytes("q.Missing") == null ? 1 : 0;
+        }
+        assertEquals(20_000 * 5, found);
+        return System.nanoTime() - start;
+    }
+
+    private static Map<String, byte[]> classes(final String... namesAndContents) {
+        final Map<String, byte[]> classes = new HashMap<>();
+        for (int i = 0; i < namesAndContents.length; i += 2) {
+            classes.put(namesAndContents[i], bytes(namesAndContents[i + 1]));
+        }
+        return classes;
+    }
+
+    private static List<String> sorted(final List<String> names) {
+        Collections.sort(names);
+        return names;
+    }
+
+    private static byte[] bytes(final String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,68 @@
+package frege.interpreter.javasupport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LruCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        final LruCache<String, String> cache = new LruCache<>(2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(1, cache.statistics().evictions());
+        assertEquals(2, cache.statistics().size());
+    }
+
+    @Test
+    public void testBoundedByWeight() {
+        final LruCache<String, String> cache = new LruCache<>(10, new LruCache.Weigher<String>() {
+            @Override
+            public long weigh(final String value) {
+                return value.length();
+            }
+        });
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        cache.put("c", "cccccc");
+
+        assertNull(cache.get("a"));
+        assertEquals("bbbb", cache.get("b"));
+        assertEquals(10, cache.statistics().weight());
+        assertEquals(4, cache.statistics().evictedWeight());
+    }
+
+    @Test
+    public void testReplacingAnEntryKeepsItsWeight() {
+        final LruCache<String, String> cache = new LruCache<>(2);
+        cache.put("a", "1");
+        cache.put("a", "2");
+
+        assertEquals("2", cache.get("a"));
+        assertEquals(1, cache.statistics().weight());
+        assertEquals(0, cache.statistics().evictions());
+    }
+
+    @Test
+    public void testInvalidateCountsAMiss() {
+        final LruCache<String, String> cache = new LruCache<>(2);
+        cache.put("a", "1");
+        cache.get("a");
+        cache.invalidate("a");
+        cache.get("b");
+
+        final LruCache.Statistics statistics = cache.statistics();
+        assertEquals(0, statistics.hits());
+        assertEquals(2, statistics.misses());
+        assertEquals(0, statistics.weight());
+        assertEquals(0.0, statistics.hitRatio(), 0.0);
+    }
+}
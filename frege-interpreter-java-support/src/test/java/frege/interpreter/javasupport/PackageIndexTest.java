@@ -0,0 +1,60 @@
+package frege.interpreter.javasupport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PackageIndexTest {
+
+    @Test
+    public void testCollectPackage() {
+        final PackageIndex<String> index = index("p.A", "p.B", "p.q.C", "pq.D");
+
+        assertEquals(Arrays.asList("p.A", "p.B"), collect(index, "p", false));
+        assertEquals(Collections.<String>emptyList(), collect(index, "r", true));
+    }
+
+    @Test
+    public void testCollectSubpackages() {
+        final PackageIndex<String> index = index("p.A", "p.q.C", "p.q.r.E", "pq.D", "p-q.F");
+
+        assertEquals(Arrays.asList("p.A", "p.q.C", "p.q.r.E"), collect(index, "p", true));
+        assertEquals(Arrays.asList("p.q.C", "p.q.r.E"), collect(index, "p.q", true));
+    }
+
+    @Test
+    public void testCollectUnnamedPackage() {
+        final PackageIndex<String> index = index("A", "p.B");
+
+        assertEquals(Collections.singletonList("A"), collect(index, "", false));
+        assertEquals(Arrays.asList("A", "p.B"), collect(index, "", true));
+    }
+
+    @Test
+    public void testPackageOf() {
+        assertEquals("p.q", PackageIndex.packageOf("p.q.A"));
+        assertEquals("p", PackageIndex.packageOf("p.A$B"));
+        assertEquals("", PackageIndex.packageOf("A"));
+    }
+
+    private static PackageIndex<String> index(final String... classNames) {
+        final PackageIndex<String> index = new PackageIndex<>();
+        for (final String className : classNames) {
+            index.add(PackageIndex.packageOf(className), className);
+        }
+        return index;
+    }
+
+    private static List<String> collect(final PackageIndex<String> index, final String packageName,
+                                        final boolean recurse) {
+        final List<String> result = new ArrayList<>();
+        index.collect(packageName, recurse, result);
+        Collections.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,169 @@
+package frege.interpreter.javasupport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SandboxExecutorTest {
+
+    private SandboxExecutor executor;
+
+    @Before
+    public void beforeTest() {
+        executor = new SandboxExecutor(1, 4, 2000);
+    }
+
+    @After
+    public void afterTest() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDeniedPermission() {
+        try {
+            executor.run(new ReadHome());
+            fail("read user.home in the sandbox");
+        } catch (RuntimeException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof SecurityException);
+        }
+        assertEquals(System.getProperty("user.home"), new ReadHome().call());
+    }
+
+    @Test
+    public void testSpawnedThread() {
+        final Throwable escape = executor.run(new Callable<Throwable>() {
+            @Override
+            public Throwable call() throws Exception {
+                final AtomicReference<Throwable> thrown = new AtomicReference<>();
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            new ReadHome().call();
+                        } catch (Throwable e) {
+                            thrown.set(e);
+                        }
+                    }
+                });
+                thread.start();
+                thread.join();
+                return thrown.get();
+            }
+        });
+        assertTrue(String.valueOf(escape), escape instanceof SecurityException);
+    }
+
+    @Test
+    public void testSandboxedSessionCode() throws Exception {
+        final InterpreterClassLoader loader = new InterpreterClassLoader(getClass().getClassLoader(),
+            Collections.singletonMap(ReadHome.class.getName(), classBytes(ReadHome.class)));
+        loader.sandbox();
+        final Callable<?> readHome = (Callable<?>) loader.loadClass(ReadHome.class.getName()).getDeclaredConstructor().newInstance();
+        assertTrue(readHome.getClass() != ReadHome.class);
+
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    readHome.call();
+                } catch (Throwable e) {
+                    thrown.set(e);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        assertTrue(String.valueOf(thrown.get()), thrown.get() instanceof SecurityException);
+    }
+
+    @Test
+    public void testTimeoutReplacesStuckWorker() throws Exception {
+        final StuckTask stuck = new StuckTask();
+        try {
+            executor.run(stuck, 100, java.util.concurrent.TimeUnit.MILLISECONDS);
+            fail("no timeout");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(1, executor.statistics().timedOut());
+        assertEquals(1, executor.statistics().stuckWorkers());
+
+        assertEquals(Integer.valueOf(42), executor.run(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 42;
+            }
+        }));
+
+        stuck.stop = true;
+        for (int i = 0; i < 100 && executor.statistics().stuckWorkers() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.statistics().stuckWorkers());
+    }
+
+    @Test
+    public void testSecurityManagerOnlyWhileSandboxedCodeRuns() {
+        final Callable<SecurityManager> securityManager = new Callable<SecurityManager>() {
+            @Override
+            public SecurityManager call() {
+                return System.getSecurityManager();
+            }
+        };
+        final SecurityManager sandbox = executor.run(securityManager);
+        // sandboxed sessions of other tests keep it installed until they are collected
+        for (int i = 0; i < 100 && System.getSecurityManager() == sandbox; i++) {
+            System.gc();
+            executor.run(securityManager);
+        }
+        final SecurityManager outside = System.getSecurityManager();
+        assertTrue(outside != sandbox);
+
+        assertTrue(executor.run(securityManager) != outside);
+        assertTrue(System.getSecurityManager() == outside);
+    }
+
+    private static byte[] classBytes(final Class<?> cls) throws IOException {
+        final String resource = cls.getName().replace('.', '/') + ".class";
+        try (InputStream in = cls.getClassLoader().getResourceAsStream(resource)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    public static final class ReadHome implements Callable<String> {
+        @Override
+        public String call() {
+            return System.getProperty("user.home");
+        }
+    }
+
+    private static final class StuckTask implements Callable<Void> {
+        private volatile boolean stop;
+
+        @Override
+        public Void call() {
+            while (!stop) {
+                Thread.interrupted();
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package frege.interpreter.javasupport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SessionMemoryTest {
+
+    private static final long NO_BYTE_LIMIT = Long.MAX_VALUE;
+
+    @Test
+    public void testWithinLimits() {
+        final InterpreterClassLoader loader = new InterpreterClassLoader(classes("p.A", classFile("a")))
+            .withClasses(classes("p.B", classFile("b")));
+
+        assertNull(SessionMemory.bound(loader, DefinitionStore.EMPTY, 2, NO_BYTE_LIMIT));
+    }
+
+    @Test
+    public void testMergesGenerations() {
+        InterpreterClassLoader loader = new InterpreterClassLoader(classes("p.A", classFile("a0"), "p.A$B", classFile("b")));
+        for (int i = 1; i <= 4; i++) {
+            loader = loader.withClasses(classes("p.A", classFile("a" + i)));
+        }
+
+        final SessionMemory.Compaction compaction = SessionMemory.bound(loader, DefinitionStore.EMPTY, 4, NO_BYTE_LIMIT);
+        assertNotNull(compaction);
+        final InterpreterClassLoader compacted = compaction.classLoader();
+        assertEquals(1, compacted.generations());
+        assertArrayEquals(classFile("a4"), compacted.classBytes("p.A"));
+        assertArrayEquals(classFile("b"), compacted.classBytes("p.A$B"));
+        assertTrue(compaction.evicted().isEmpty());
+        assertNull(SessionMemory.bound(compacted.withClasses(classes("p.C", classFile("c"))),
+            compaction.definitions(), 4, NO_BYTE_LIMIT));
+    }
+
+    @Test
+    public void testDropsHiddenDefinitionsWithoutReportingThem() {
+        final InterpreterClassLoader loader = new InterpreterClassLoader(classes("frege.interpreter.Defs1", classFile("f")))
+            .withClasses(classes("frege.interpreter.Defs2", classFile("f")));
+        final DefinitionStore definitions = DefinitionStore.EMPTY
+            .define("frege.interpreter.Defs1", new String[] { "f" })
+            .define("frege.interpreter.Defs2", new String[] { "f" });
+
+        final SessionMemory.Compaction compaction = SessionMemory.compact(loader, definitions, NO_BYTE_LIMIT);
+        assertEquals(Collections.singletonList("frege.interpreter.Defs2"), compaction.definitions().modules());
+        assertNull(compaction.classLoader().classBytes("frege.interpreter.Defs1"));
+        assertTrue(compaction.evicted().isEmpty());
+    }
+
+    @Test
+    public void testKeepsReferencedDefinitions() {
+        final InterpreterClassLoader loader = new InterpreterClassLoader(classes("frege.interpreter.Defs1", classFile("f")))
+            .withClasses(classes("frege.interpreter.Defs2", classFile("g", "frege/interpreter/Defs1")))
+            .withClasses(classes("frege.interpreter.Defs3", classFile("f")));
+        final DefinitionStore definitions = DefinitionStore.EMPTY
+            .define("frege.interpreter.Defs1", new String[] { "f" })
+            .define("frege.interpreter.Defs2", new String[] { "g" })
+            .define("frege.interpreter.Defs3", new String[] { "f" });
+
+        final SessionMemory.Compaction compaction = SessionMemory.compact(loader, definitions, NO_BYTE_LIMIT);
+        assertEquals(3, compaction.definitions().size());
+        assertNotNull(compaction.classLoader().classBytes("frege.interpreter.Defs1"));
+    }
+
+    @Test
+    public void testEvictsDownToHalfTheByteLimitAndReportsIt() {
+        InterpreterClassLoader loader = null;
+        DefinitionStore definitions = DefinitionStore.EMPTY;
+        for (int i = 1; i <= 4; i++) {
+            final Map<String, byte[]> classes = classes("frege.interpreter.Defs" + i, classFile(filler(100)));
+            loader = loader == null ? new InterpreterClassLoader(classes) : loader.withClasses(classes);
+            definitions = definitions.define("frege.interpreter.Defs" + i, new String[] { "f" + i });
+        }
+        final long moduleBytes = loader.ownBytes();
+        final long maxBytes = 3 * moduleBytes;
+
+        final SessionMemory.Compaction compaction = SessionMemory.bound(loader, definitions, 64, maxBytes);
+        assertNotNull(compaction);
+        assertEquals(Collections.singletonList("frege.interpreter.Defs4"), compaction.definitions().modules());
+        assertEquals(Arrays.asList("f1", "f2", "f3"), compaction.evicted());
+        assertTrue(compaction.classLoader().totalBytes() <= maxBytes / 2);
+
+        final InterpreterClassLoader grown = compaction.classLoader()
+            .withClasses(classes("frege.interpreter.Defs5", classFile(filler(100))));
+        assertNull(SessionMemory.bound(grown, compaction.definitions().define("frege.interpreter.Defs5",
+            new String[] { "f5" }), 64, maxBytes));
+    }
+
+    @Test
+    public void testLastExpressionDoesNotKeepTheDefinitionsItUses() {
+        InterpreterClassLoader loader = null;
+        DefinitionStore definitions = DefinitionStore.EMPTY;
+        for (int i = 1; i <= 4; i++) {
+            final Map<String, byte[]> classes = classes("frege.interpreter.Defs" + i, classFile(filler(100)));
+            loader = loader == null ? new InterpreterClassLoader(classes) : loader.withClasses(classes);
+            definitions = definitions.define("frege.interpreter.Defs" + i, new String[] { "f" + i });
+        }
+        final long maxBytes = 3 * loader.ownBytes();
+        loader = loader.withClasses(classes("frege.interpreter.Console", classFile("frege/interpreter/Defs1")));
+
+        final SessionMemory.Compaction compaction = SessionMemory.bound(loader, definitions, 64, maxBytes);
+        assertNotNull(compaction);
+        assertEquals(Collections.singletonList("frege.interpreter.Defs4"), compaction.definitions().modules());
+        assertNull(compaction.classLoader().classBytes("frege.interpreter.Console"));
+        assertTrue(compaction.classLoader().totalBytes() <= maxBytes / 2);
+    }
+
+    @Test
+    public void testDroppedNames() {
+        final DefinitionStore definitions = DefinitionStore.EMPTY
+            .define("frege.interpreter.Defs1", new String[] { "T(A, B)", "f" })
+            .define("frege.interpreter.Defs2", new String[] { "g" });
+
+        assertArrayEquals(new String[] { "A", "B", "T", "f" },
+            definitions.droppedNames(definitions.without("frege.interpreter.Defs1")));
+        assertArrayEquals(new String[0], definitions.droppedNames(definitions));
+        assertFalse(Arrays.asList(definitions.droppedNames(
+            definitions.define("frege.interpreter.Defs3", new String[] { "f" }))).contains("f"));
+    }
+
+    @Test
+    public void testDefineRejectsATakenModuleName() {
+        final DefinitionStore definitions = DefinitionStore.EMPTY
+            .define("frege.interpreter.Defs1", new String[] { "f" });
+
+        assertTrue(definitions.isDefined("frege.interpreter.Defs1"));
+        assertFalse(definitions.isDefined("frege.interpreter.Defs2"));
+        try {
+            definitions.define("frege.interpreter.Defs1", new String[] { "g" });
+            fail("defined frege.interpreter.Defs1 twice");
+        } catch (IllegalStateException e) {
+            assertNull(definitions.owner("g"));
+        }
+    }
+
+    private static Map<String, byte[]> classes(final Object... namesAndBytes) {
+        final Map<String, byte[]> classes = new HashMap<>();
+        for (int i = 0; i < namesAndBytes.length; i += 2) {
+            classes.put((String) namesAndBytes[i], (byte[]) namesAndBytes[i + 1]);
+        }
+        return classes;
+    }
+
+    /**
+     * A class file that has only a constant pool, with the given UTF-8 constants.
+     */
+    private static byte[] classFile(final String... constants) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(52);
+            out.writeShort(constants.length + 1);
+            for (final String constant : constants) {
+                out.writeByte(1);
+                out.writeUTF(constant);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String filler(final int length) {
+        final char[] chars = new char[length];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+}
@@ -0,0 +1,38 @@
+package frege.interpreter.javasupport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SourceTypeCacheTest {
+
+    @Before
+    public void beforeTest() {
+        SourceTypeCache.clear();
+    }
+
+    @Test
+    public void testUnknownScript() {
+        assertEquals(-1, SourceTypeCache.get("x = 1"));
+    }
+
+    @Test
+    public void testKeepsTheKindOfAScript() {
+        SourceTypeCache.put("x = 1", 1);
+        SourceTypeCache.put("x + 1", 2);
+
+        assertEquals(1, SourceTypeCache.get("x = 1"));
+        assertEquals(2, SourceTypeCache.get("x + 1"));
+        assertEquals(-1, SourceTypeCache.get("x = 1\n"));
+    }
+
+    @Test
+    public void testClear() {
+        SourceTypeCache.put("module M where", 0);
+        SourceTypeCache.clear();
+
+        assertEquals(-1, SourceTypeCache.get("module M where"));
+        assertEquals(0, SourceTypeCache.statistics().size());
+    }
+}